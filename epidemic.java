@@ -6,14 +6,67 @@
  * Note:  This solution to MP9 is based on the posted solution to MP8
  */
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.DirectoryStream;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.io.PrintStream;
 import java.util.Random;
 import java.util.Scanner;
 import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.DoubleUnaryOperator;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
 
 /** Error reporting framework
  *  All error messages go to System.err (aka stderr, the standard error stream).
@@ -22,12 +75,50 @@ import java.util.PriorityQueue;
  */
 class Error {
     private static int warningCount = 0;
+    private static AsyncOutput output = null; // where warnings go, if not null
+
+    // warnings collected by the current thread, null if not collecting
+    private static final ThreadLocal < StringBuilder > collected
+        = new ThreadLocal < > ();
+
+    /** Thrown in place of terminating, for threads collecting warnings
+     *  The message includes all of the warnings collected before it.
+     */
+    public static class Failure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public Failure(String msg) {
+            super(msg);
+        }
+    }
+
+    /** Collect warnings on this thread instead of reporting them
+     *  After this, warnings from this thread are kept, and fatal errors
+     *  throw a Failure instead of terminating the program, so one thread
+     *  of a long running program can process bad input safely.
+     *  Call with false to stop collecting.
+     *  @param on -- true to start collecting, false to stop
+     */
+    public static void collect(boolean on) {
+        collected.set(on ? new StringBuilder() : null);
+    }
+
+    /** Is this thread collecting warnings?
+     *  @return true if it is
+     */
+    public static boolean collecting() {
+        return collected.get() != null;
+    }
 
     /** Report a fatal error
      *  @param msg -- error message to be output
-     *  This never returns, the program terminates reporting failure.
+     *  This never returns, the program terminates reporting failure,
+     *  or if this thread is collecting warnings, a Failure is thrown.
      */
     public static void fatal(String msg) {
+        final StringBuilder c = collected.get();
+        if (c != null) throw new Failure(c + "Epidemic: " + msg);
+        setOutput(null); // make sure pending warnings are out first
         System.err.println("Epidemic: " + msg);
         System.exit(1); // abnormal termination
     }
@@ -37,14 +128,47 @@ class Error {
      *  keeps a running count of warnings
      */
     public static void warn(String msg) {
-        System.err.println("Warning: " + msg);
+        final StringBuilder c = collected.get();
+        if (c != null) {
+            c.append("Warning: ").append(msg).append('\n');
+            return;
+        }
+        synchronized (Error.class) {
+            report(msg);
+        }
+    }
+
+    // output a warning and count it, with the lock on Error held
+    private static void report(String msg) {
+        if (output != null) {
+            output.publish(warningFormat, 0.0, null, msg);
+        } else {
+            System.err.println("Warning: " + msg);
+        }
         warningCount = warningCount + 1;
     }
 
+    // how warnings are formatted by an AsyncOutput
+    private static final AsyncOutput.Format warningFormat
+        = (StringBuilder sb, double t, int[] v, Object msg) ->
+            sb.append("Warning: ").append(msg).append('\n');
+
+    /** Send warnings through an asynchronous output stage
+     *  @param o -- an output stage for System.err, or null to print directly
+     *  Any previous stage is closed, so its warnings are all output.
+     *  Warnings are serialized here, so many threads may warn at once.
+     */
+    public static synchronized void setOutput(AsyncOutput o) {
+        if (output != null) output.close();
+        output = o;
+    }
+
     /** Error exit if any warnings
+     *  Threads collecting warnings only consider their own.
      */
     public static void exitIfWarnings(String msg) {
-        if (warningCount > 0) fatal(msg);
+        final StringBuilder c = collected.get();
+        if ((c != null) ? (c.length() > 0) : (warningCount > 0)) fatal(msg);
     }
 }
 
@@ -61,6 +185,10 @@ class MyScanner {
         sc = new Scanner(f);
     }
 
+    public MyScanner(String text) {
+        sc = new Scanner(text);
+    }
+
     // methods that we wish we could inhereit from Scanner
     public boolean hasNext() {
         return sc.hasNext();
@@ -278,32 +406,200 @@ class Check {
     }
 }
 
-/** Wrapper extending class Random, turning it into a singleton class
+/** Wrapper extending class Random, adding the distributions we need
  *  @see Random
  *  Ideally, no user should ever create an instance of Random, all use this!
  *  Users can call MyRandom.stream.anyMethodOfRandom() (or of MyRandom)
  *              or MyRandom.stream().anyMethodOfRandom()
  *  Users can allocate MyRandom myStream = MyRandom.stream;
  *                  or MyRandom myStream = MyRandom.stream();
- *  No matter how they do it, they get the same stream
+ *  No matter how they do it, they get the same default stream.
+ *  Each Simulation draws from the stream it was given, so concurrent
+ *  simulations can each be given their own seeded stream.
+ *  Unlike Random, a stream must only be used by one thread at a time;
+ *  this keeps the generator's state in a plain field, without Random's
+ *  compare-and-set on every draw.  The sequence is the same as Random.
  */
 class MyRandom extends Random {
-    /** the only random number stream
+    // the state of the linear congruential generator, as in Random
+    private static final long multiplier = 0x5DEECE66DL;
+    private static final long addend = 0xBL;
+    private static final long mask = (1L << 48) - 1;
+    private long seed; // set by setSeed, which Random's constructor calls
+
+    private final long origin; // the seed this stream was constructed with
+    private final boolean split; // do simulations draw from substreams?
+
+    /** the default random number stream
      */
-    public static final MyRandom stream = new MyRandom(); // the only stream;
+    public static final MyRandom stream = new MyRandom(); // the default
 
-    // nobody can construct a MyRandom except the above line of code
+    // the default stream is seeded from the clock
     private MyRandom() {
         super();
+        origin = 0;
+        split = false;
+    }
+
+    /** construct a reproducible stream
+     *  @param seed -- the seed for this stream
+     */
+    public MyRandom(long seed) {
+        this(seed, false);
+    }
+
+    /** construct a reproducible stream, perhaps split into substreams
+     *  @param seed -- the seed for this stream
+     *  @param s -- should simulations draw from substreams of it?
+     *  @see Simulation#rand(int, Person.DiseaseStates)
+     */
+    public MyRandom(long seed, boolean s) {
+        super(seed);
+        origin = seed;
+        split = s;
     }
 
-    /* alternative access to the only random number stream
-     * @return the only stream
+    /** Is this stream split into substreams?
+     *  @return true if simulations should draw from its substreams
+     */
+    public boolean split() {
+        return split;
+    }
+
+    /** Reseed this stream as one of the substreams of another
+     *  @param of -- the stream that is split
+     *  @param a, b, c -- which substream, in numbers the caller chooses
+     *  @return this stream, now drawing what any stream reseeded with the
+     *  same arguments draws
+     *  The seed is a hash of the arguments, so substreams are independent
+     *  however alike their numbers are.  Unlike setSeed, this is cheap
+     *  enough to do before every draw.
+     */
+    MyRandom substream(MyRandom of, int a, int b, int c) {
+        long h = mix(of.origin + golden);
+        h = mix(h + a + golden);
+        h = mix(h + b + golden);
+        h = mix(h + c + golden);
+        seed = (h ^ multiplier) & mask;
+        return this;
+    }
+
+    // the SplitMix64 increment and finalizer, which spreads each bit of
+    // its argument over all of the result
+    private static final long golden = 0x9E3779B97F4A7C15L;
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /* alternative access to the default random number stream
+     * @return the default stream
      */
     public static MyRandom stream() {
         return stream;
     }
 
+    @Override
+    public synchronized void setSeed(long s) {
+        super.setSeed(s); // Random keeps other state, such as for gaussians
+        seed = (s ^ multiplier) & mask;
+    }
+
+    @Override
+    protected int next(int bits) {
+        seed = (seed * multiplier + addend) & mask;
+        return (int) (seed >>> (48 - bits));
+    }
+
+    // Ziggurat tables, Marsaglia and Tsang, "The Ziggurat Method for
+    // Generating Random Variables", J. Stat. Software 5(8), 2000.
+    // Layer i covers x up to zx[i]; zr[i] = zx[i + 1] / zx[i] is the part
+    // of the layer entirely under the density, so it needs no more tests.
+
+    // the normal distribution, 128 layers, x >= 0, the sign drawn too
+    private static final double normalR = 3.442619855899; // start of tail
+    private static final double normalV = 9.91256303526217e-3; // layer area
+    private static final double[] normalX = new double[129];
+    private static final double[] normalRatio = new double[128];
+
+    // the exponential distribution, 256 layers
+    private static final double expR = 7.69711747013104972; // start of tail
+    private static final double expV = 3.949659822581572e-3; // layer area
+    private static final double[] expX = new double[257];
+    private static final double[] expRatio = new double[256];
+
+    static {
+        double f = Math.exp(-0.5 * normalR * normalR);
+        normalX[0] = normalV / f; // the base layer, including the tail
+        normalX[1] = normalR;
+        for (int i = 2; i < 128; i++) {
+            normalX[i] = Math.sqrt(-2 * Math.log(normalV / normalX[i - 1] + f));
+            f = Math.exp(-0.5 * normalX[i] * normalX[i]);
+        }
+        normalX[128] = 0.0;
+        for (int i = 0; i < 128; i++) {
+            normalRatio[i] = normalX[i + 1] / normalX[i];
+        }
+
+        f = Math.exp(-expR);
+        expX[0] = expV / f;
+        expX[1] = expR;
+        for (int i = 2; i < 256; i++) {
+            expX[i] = -Math.log(expV / expX[i - 1] + f);
+            f = Math.exp(-expX[i]);
+        }
+        expX[256] = 0.0;
+        for (int i = 0; i < 256; i++) expRatio[i] = expX[i + 1] / expX[i];
+    }
+
+    /** standard normal distribution, by the ziggurat method
+     *  @return a normally distributed value, mean 0, standard deviation 1
+     *  Unlike nextGaussian(), this keeps no second value between calls.
+     */
+    public double nextNormal() {
+        for (;;) {
+            final long r = nextLong(); // 7 bits of layer, 53 of position
+            final int i = (int) (r & 127);
+            final double u = (r >>> 11) * 0x1.0p-52 - 1.0; // in [-1,1)
+            final double x = u * normalX[i];
+            if (Math.abs(u) < normalRatio[i]) return x; // the usual case
+            if (i == 0) { // the tail, beyond normalR
+                double t;
+                double y;
+                do {
+                    t = Math.log(nextDouble()) / normalR;
+                    y = Math.log(nextDouble());
+                } while (-2 * y < t * t);
+                return (u < 0) ? t - normalR : normalR - t;
+            }
+            final double f0 = Math.exp(
+                -0.5 * (normalX[i] * normalX[i] - x * x)
+            );
+            final double f1 = Math.exp(
+                -0.5 * (normalX[i + 1] * normalX[i + 1] - x * x)
+            );
+            if (f1 + nextDouble() * (f0 - f1) < 1.0) return x;
+        }
+    }
+
+    /** standard exponential distribution, by the ziggurat method
+     *  @return an exponentially distributed value with mean 1
+     */
+    private double exponential() {
+        for (;;) {
+            final long r = nextLong(); // 8 bits of layer, 53 of position
+            final int i = (int) (r & 255);
+            final double u = (r >>> 11) * 0x1.0p-53; // in [0,1)
+            final double x = u * expX[i];
+            if (u < expRatio[i]) return x; // the usual case
+            if (i == 0) return expR - Math.log(1.0 - nextDouble()); // tail
+            final double f0 = Math.exp(x - expX[i]);
+            final double f1 = Math.exp(x - expX[i + 1]);
+            if (f1 + nextDouble() * (f0 - f1) < 1.0) return x;
+        }
+    }
+
     // add distributions that weren't built in
 
     /** exponential distribution
@@ -311,7 +607,7 @@ class MyRandom extends Random {
      *  @return a positive exponentially distributed random value
      */
     public double nextExponential(double mean) {
-        return mean * -Math.log(this.nextDouble());
+        return mean * exponential();
     }
 
     /** log-normal distribution
@@ -320,7 +616,95 @@ class MyRandom extends Random {
      *  @return a log-normally distributed random value
      */
     public double nextLogNormal(double median, double sigma) {
-        return Math.exp(sigma * this.nextGaussian()) * median;
+        return Math.exp(sigma * this.nextNormal()) * median;
+    }
+
+    /** Check the samplers, printing statistics and timing
+     *  @param n -- the number of values to draw from each
+     *  @param o -- where the results go
+     *  For each sampler this prints the mean and variance, which should
+     *  be near those shown, and the Kolmogorov-Smirnov statistic D, where
+     *  sqrt(n)*D above about 1.63 rejects the distribution at the 1% level.
+     *  The time per value is compared with the methods of Random.
+     */
+    public static void check(int n, PrintStream o) {
+        final MyRandom r = new MyRandom(1);
+        final double[] a = new double[n];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) a[i] = r.nextNormal();
+        long time = System.nanoTime() - start;
+        checkSample(o, "normal", a, 0.0, 1.0, time,
+            (double x) -> 0.5 * (1 + erf(x / Math.sqrt(2)))
+        );
+        start = System.nanoTime();
+        for (int i = 0; i < n; i++) a[i] = r.nextGaussian();
+        time = System.nanoTime() - start;
+        checkSample(o, "nextGaussian", a, 0.0, 1.0, time,
+            (double x) -> 0.5 * (1 + erf(x / Math.sqrt(2)))
+        );
+
+        start = System.nanoTime();
+        for (int i = 0; i < n; i++) a[i] = r.nextExponential(1.0);
+        time = System.nanoTime() - start;
+        checkSample(o, "exponential", a, 1.0, 1.0, time,
+            (double x) -> 1 - Math.exp(-x)
+        );
+        start = System.nanoTime();
+        for (int i = 0; i < n; i++) a[i] = -Math.log(r.nextDouble());
+        time = System.nanoTime() - start;
+        checkSample(o, "-log(nextDouble)", a, 1.0, 1.0, time,
+            (double x) -> 1 - Math.exp(-x)
+        );
+    }
+
+    /** Print statistics of one sample
+     *  @param o -- where they go
+     *  @param name -- what was sampled
+     *  @param a -- the sample, which is sorted
+     *  @param mean -- the expected mean
+     *  @param var -- the expected variance
+     *  @param time -- nanoseconds taken to draw it
+     *  @param cdf -- the expected cumulative distribution
+     */
+    private static void checkSample(
+        PrintStream o, String name, double[] a, double mean, double var,
+        long time, DoubleUnaryOperator cdf
+    ) {
+        final int n = a.length;
+        double m = 0.0;
+        double m2 = 0.0;
+        for (int i = 0; i < n; i++) { // Welford
+            final double d = a[i] - m;
+            m = m + d / (i + 1);
+            m2 = m2 + d * (a[i] - m);
+        }
+        Arrays.sort(a);
+        double d = 0.0;
+        for (int i = 0; i < n; i++) {
+            final double f = cdf.applyAsDouble(a[i]);
+            d = Math.max(d, Math.max(f - (double) i / n, (i + 1.0) / n - f));
+        }
+        o.printf("%-17s mean %8.5f (%.1f) var %8.5f (%.1f)"
+            + " sqrt(n)D %6.3f %7.2f ns/value%n",
+            name, m, mean, m2 / (n - 1), var, Math.sqrt(n) * d,
+            (double) time / n
+        );
+    }
+
+    /** The error function
+     *  @param x -- the argument
+     *  @return erf(x), to within 1.2e-7
+     *  Numerical Recipes' erfc, from Chebyshev fitting.
+     */
+    private static double erf(double x) {
+        final double z = Math.abs(x);
+        final double t = 1.0 / (1.0 + 0.5 * z);
+        final double erfc = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368
+            + t * (0.37409196 + t * (0.09678418 + t * (-0.18628806
+            + t * (0.27886807 + t * (-1.13520398 + t * (1.48851638
+            + t * (-0.82215223 + t * 0.17087277)))))))));
+        return (x >= 0) ? 1.0 - erfc : erfc - 1.0;
     }
 }
 
@@ -341,9 +725,9 @@ class Time {
 }
 
 /** Framework for discrete event simulation
+ *  Each Simulation has its own Simulator, so simulations are independent.
  */
 class Simulator {
-    private Simulator() {} // prevent construction of instances!  Don't call!
 
     /** Functional interface for scheduling actions to be done later
      *  Users will generally never mention Action or trigger because
@@ -355,52 +739,122 @@ class Simulator {
 
     private static class Event {
         public final double time; // when will this event occur
+        public final long order; // simultaneous events happen in this order
         public final Action act; // what to do then
-        public Event(double t, Action a) {
+        public Event(double t, long o, Action a) {
             time = t;
+            order = o;
             act = a;
         }
+
+        /** Has this event been cancelled?
+         *  @return true if it should be dropped instead of done
+         */
+        boolean stale() {
+            return false;
+        }
+    }
+
+    // events cancelled by changing a generation counter
+    private static class GuardedEvent extends Event {
+        private final int[] generations; // the counters
+        private final int index; // which counter
+        private final int generation; // its value when scheduled
+        public GuardedEvent(
+            double t, long o, int[] g, int i, Action a
+        ) {
+            super(t, o, a);
+            generations = g;
+            index = i;
+            generation = g[i];
+        }
+
+        boolean stale() {
+            return generations[index] != generation;
+        }
     }
 
-    private static final PriorityQueue < Event > eventSet
+    private final PriorityQueue < Event > eventSet
         = new PriorityQueue < > (
-            (Event e1, Event e2) -> Double.compare(e1.time, e2.time)
+            (Event e1, Event e2) -> (e1.time != e2.time)
+                ? Double.compare(e1.time, e2.time)
+                : Long.compare(e1.order, e2.order)
         );
+    private long scheduled = 0; // the number of events ever scheduled
+    private long done = 0; // the number of events done, not counting stale
 
     /** Schedule an event to occur at a future time
      *  @param t, the time of the event
      *  @param a, what to do for that event
      *  example:
      *  <pre>
-     *    Simulator.schedule( now+later, (double t)-> whatToDo( then, stuff ) );
+     *    sim.schedule( now+later, (double t)-> whatToDo( then, stuff ) );
      *  </pre>
+     *  Events scheduled for the same time happen in the order scheduled.
+     */
+    public void schedule(double t, Action a) {
+        eventSet.add(new Event(t, scheduled, a));
+        scheduled = scheduled + 1;
+    }
+
+    /** Schedule an event that can be cancelled in bulk
+     *  @param t, the time of the event
+     *  @param g, an array of generation counters
+     *  @param i, the counter for this event
+     *  @param a, what to do for that event
+     *  Incrementing g[i] cancels every event scheduled against it so far,
+     *  at once; cancelled events are dropped when their time comes.
      */
-    public static void schedule(double t, Action a) {
-        eventSet.add(new Event(t, a));
+    public void schedule(double t, int[] g, int i, Action a) {
+        eventSet.add(new GuardedEvent(t, scheduled, g, i, a));
+        scheduled = scheduled + 1;
     }
 
     /** Run the simulation
      *  Before running the simulation, schedule the initial events
      *  all of the simulation occurs as side effects of scheduled events
+     *  This returns when there are no more events or after stop().
      */
-    public static void run() {
+    public void run() {
         while (!eventSet.isEmpty()) {
             Event e = eventSet.remove();
-            e.act.trigger(e.time);
+            if (!e.stale()) {
+                e.act.trigger(e.time);
+                done = done + 1;
+            }
         }
     }
 
-    /** Schedule everyone's activities throughout their day
-     *  @author Andy Chen, Blake Thorson
-     *  @param d the end of the simulation
+    /** Run the simulation up to a given time
+     *  @param until -- events at or before this time are run
+     *  This returns when the next event is later than until, when there are
+     *  no more events or after stop().
      */
-    public static void scheduleActivities(double d) {
-        for (Person p: Person.allPeople) {
-            for (double day = 0; day < d; day++) {
-                p.dailySchedule(day);
+    public void run(double until) {
+        while (!eventSet.isEmpty() && (eventSet.peek().time <= until)) {
+            Event e = eventSet.remove();
+            if (!e.stale()) {
+                e.act.trigger(e.time);
+                done = done + 1;
             }
         }
     }
+
+    /** How much work has been done
+     *  @return the number of events done so far, not counting those
+     *  dropped as cancelled
+     */
+    public long done() {
+        return done;
+    }
+
+    /** Stop the simulation
+     *  Discards all pending events so run() returns after the current event.
+     *  This is a schedulable event service routine, used for the end of time.
+     */
+    public void stop() {
+        eventSet.clear();
+    }
 }
 
 /** Places that people are associate with and may occupy.
@@ -409,18 +863,26 @@ class Simulator {
  */
 class Place {
     // instance variables fixed at creation
+    public final int id; // number of this place within its simulation
+    final Simulation sim; // the simulation this place is part of
     public final PlaceKind kind; // what kind of place is this?
     private final double transmissivity; // how dangerous is it to stay here
 
     // instance variables that vary with circumstances
     private int contageous = 0; // how many infectious people are here
+    private boolean rescheduling = false; // is reschedule() pending now?
     private final LinkedList < Person > occupants = new LinkedList < > ();
 
     /** Construct a new place
+     *  @param s -- the simulation this place is part of
+     *  @param i -- the number of this place in the topology
      *  @param k -- the kind of place
      *  @param t -- the transmissivity of the place
+     *  @see PlaceKind#newPlace
      */
-    public Place(PlaceKind k, Double t) {
+    public Place(Simulation s, int i, PlaceKind k, Double t) {
+        sim = s;
+        id = i;
         kind = k;
         transmissivity = t;
     }
@@ -430,8 +892,8 @@ class Place {
      */
     void arrive(Person p) {
         occupants.add(p);
-        p.location = this;
-        // BUG: what else?
+        sim.popByState[sim.occupantBase + kind.index]++;
+        p.locate(this);
     }
 
     /** a person departs from a place
@@ -439,8 +901,9 @@ class Place {
      */
     void depart(Person p) {
         occupants.remove(p);
-        p.location = null;
-        // BUG: what else?
+        sim.popByState[sim.occupantBase + kind.index]--;
+        p.locate(null);
+        p.cancelInfect(); // they can't be infected here any more
     }
 
     /** a person in this place changes contageon state
@@ -449,14 +912,56 @@ class Place {
      *  Note: when an infectious person arrives, always call contgeous(+1)
      *  before calling arrive() and always call contageous(-1) before
      *  calling depart() when a sick person leaves.
+     *  Occupants are rescheduled once, after all the changes at this time;
+     *  at shift changes many people come and go at once.
      */
     void contageous(double time, int c) {
         contageous = contageous + c;
+        sim.popByState[sim.contageousBase + kind.index] += c;
+
+        if (!rescheduling) { // when the number of contageous people changes,
+            rescheduling = true;
+            sim.schedule(time, (double t) -> reschedule(t));
+        }
+    }
 
-        // when the number of contageous people in a place changes,
+    /** Reschedule everyone's infection time after contageon changes
+     *  @param time -- the time of the change
+     *  This is a schedulable event service routine, and happens after
+     *  any other events already scheduled for the same time.
+     */
+    private void reschedule(double time) {
+        rescheduling = false;
+        if ((contageous > 0) && (transmissivity > 0)) {
+            final double mean = 1 / (contageous * transmissivity);
+            for (Person p: occupants) p.scheduleInfect(time, mean);
+        } else { // nobody will be infected here
+            for (Person p: occupants) p.cancelInfect();
+        }
+    }
+
+    /** Log the contageous occupants present when someone is infected here
+     *  @param log -- the log, to which a record has just been begun
+     */
+    void logContageous(TransmissionLog log) {
         for (Person p: occupants) {
-            p.scheduleInfect(time, 1 / (contageous * transmissivity));
+            if (p.isContageous()) log.infector(p.id);
+        }
+    }
+
+    /** When one of the contageous occupants was infected
+     *  @param p -- a person just infected here
+     *  @return the time, or NaN if there is no contageous occupant
+     *  The occupant is picked by p's number.
+     *  @see Durations
+     */
+    double infectorInfected(Person p) {
+        if (contageous <= 0) return Double.NaN;
+        int pick = p.id % contageous;
+        for (Person o: occupants) {
+            if (o.isContageous() && (pick-- == 0)) return o.infectedAt();
         }
+        return Double.NaN;
     }
 
     /** Reschedule a peron's infection time after they move places
@@ -464,7 +969,8 @@ class Place {
      *  @param p -- the person
      */
     void scheduleInfectPerson(double time, Person p) {
-        if (time != 0) {
+        if ((time != 0) && (contageous > 0) && (transmissivity > 0)
+        && !rescheduling) { // a pending reschedule() will include p
             p.scheduleInfect(time, 1 / (contageous * transmissivity));
         }
     }
@@ -475,43 +981,24 @@ class Place {
  */
 class PlaceKind {
 
-    // linkage from person to associated place involves a schedule
-    private class PersonSchedule {
-        public Person person;
-        public Schedule schedule;
-        public PersonSchedule(Person p, Schedule s) {
-            person = p;
-            schedule = s;
-        }
-    }
-
     // instance variables from the input
     final String name; // the name of this category of place
+    final int index; // position of this category in its model
     private double median; // median population for this category
     private double scatter; // scatter of size distribution, reduces to sigma
     private double transmissivity; // how likely is disease transmission here
 
     // instance variables developed during model elaboration
     private double sigma; // sigma of the log normal population distribution
-    private Place unfilledPlace = null; // a place of this kind being filled
-    private int unfilledCapacity = 0; // capacity of unfilledPlace
-
-    // a list of all the people associated with this kind of place
-    private final LinkedList < PersonSchedule > people
-        = new LinkedList < > ();
-
-    // static variables used for categories of places
-    private static LinkedList < PlaceKind > allPlaceKinds
-        = new LinkedList < > ();
-    private static final MyRandom rand = MyRandom.stream();
 
     /** Construct a new place category by scanning an input stream
      *  @param in -- the input stream
+     *  @param m -- the model this category belongs to
      *  The stream must contain the category name, and the parameters
      *  for a log-normal distribution for the sizes.
      *  All specifications end with a semicolon.
      */
-    public PlaceKind(MyScanner in ) {
+    public PlaceKind(MyScanner in , Model m) {
 
         name = in .getNextName("???", () -> "place with no name");
         median = in .getNextFloat(
@@ -532,8 +1019,36 @@ class PlaceKind {
             () -> this.describe() + ": missing semicolon"
         );
 
+        check(m);
+        index = m.placeKinds.size();
+        m.placeKinds.add(this); // include this in the list of all
+    }
+
+    /** Construct a new place category directly, without scanning
+     *  @param m -- the model this category belongs to
+     *  @param n -- the category name
+     *  @param med -- median population of places in this category
+     *  @param sc -- scatter of the place sizes
+     *  @param t -- transmissivity, per hour
+     *  The parameters get the same checks as when they are scanned.
+     */
+    public PlaceKind(Model m, String n, double med, double sc, double t) {
+        name = n;
+        median = med;
+        scatter = sc;
+        transmissivity = (1 / Time.hour) * t;
+
+        check(m);
+        index = m.placeKinds.size();
+        m.placeKinds.add(this); // include this in the list of all
+    }
+
+    /** Check and repair the parameters of a new category
+     *  @param m -- the model this category is joining
+     */
+    private void check(Model m) {
         // complain if the name is not unique
-        if (findPlaceKind(name) != null) {
+        if (m.findPlaceKind(name) != null) {
             Error.warn(this.describe() + ": duplicate name");
         }
         // force the median to be positive
@@ -550,7 +1065,46 @@ class PlaceKind {
         );
 
         sigma = Math.log((scatter + median) / median);
-        allPlaceKinds.add(this); // include this in the list of all
+    }
+
+    /** Copy a place category into another model
+     *  @param pk -- the category to copy
+     *  @param m -- the model the copy belongs to
+     */
+    public PlaceKind(PlaceKind pk, Model m) {
+        name = pk.name;
+        index = pk.index;
+        median = pk.median;
+        scatter = pk.scatter;
+        transmissivity = pk.transmissivity;
+        sigma = pk.sigma;
+        m.placeKinds.add(this);
+    }
+
+    /** Change one of the parameters of this category
+     *  @param field -- median, scatter or transmissivity
+     *  @param value -- the new value, in the units used in model files
+     *  @return false if there is no such field
+     *  Only use this on a copy of a model that is not being simulated.
+     */
+    public boolean set(String field, double value) {
+        if ("median".equals(field)) {
+            median = Check.positive(value, 1.0F,
+                () -> this.describe() + ": non-positive median?"
+            );
+        } else if ("scatter".equals(field)) {
+            scatter = Check.nonNeg(value, 0.0F,
+                () -> this.describe() + ": negative scatter?"
+            );
+        } else if ("transmissivity".equals(field)) {
+            transmissivity = Check.nonNeg((1 / Time.hour) * value, 0.0F,
+                () -> this.describe() + ": negative transmissivity?"
+            );
+        } else {
+            return false;
+        }
+        sigma = Math.log((scatter + median) / median);
+        return true;
     }
 
     /** Produce a reasonable textual description of this place
@@ -562,58 +1116,190 @@ class PlaceKind {
             " " + transmissivity;
     }
 
-    /** Find or make a place of a particular kind
+    /** convert a place category back to textual form
+     *  @return the category as it would be in a model file
+     */
+    public String toString() {
+        return "place " + name + " " + median + " " + scatter + " "
+            + transmissivity * Time.hour + ";";
+    }
+
+    /** Make one of the places of this kind
+     *  @param sim -- the simulation the place is part of
+     *  @param id -- the number of the place in the topology
      *  @return the place
-     *  This should be called when a person is to be linked to a place of some
-     *  particular kind, potentially occupying a space in that place.
      */
-    private Place findPlace() {
-        if (unfilledCapacity <= 0) { // need to make a new place
-            // make new place using a log-normal distribution for the size
-            unfilledCapacity
-                = (int) Math.round(rand.nextLogNormal(median, sigma));
-            unfilledPlace = new Place(this, transmissivity);
+    public Place newPlace(Simulation sim, int id) {
+        return new Place(sim, id, this, transmissivity);
+    }
+
+    /** The expected number of people in a place of this kind
+     *  @return the mean size, as distributePeople draws sizes
+     *  This is estimated from a fixed sample of sizes.
+     */
+    double meanSize() {
+        return sizeMoments()[0];
+    }
+
+    /** The first two moments of the number of people in places of this kind
+     *  @return the mean size and the mean square size
+     *  These are estimated from a fixed sample of sizes, as distributePeople
+     *  draws them.
+     */
+    double[] sizeMoments() {
+        final MyRandom r = new MyRandom(0);
+        final int n = 100000;
+        double sum = 0;
+        double sumSq = 0;
+        for (int i = 0; i < n; i++) {
+            final long size
+                = Math.max(1, Math.round(r.nextLogNormal(median, sigma)));
+            sum = sum + size;
+            sumSq = sumSq + (double) size * size;
         }
-        unfilledCapacity = unfilledCapacity - 1;
-        return unfilledPlace;
+        return new double[] { sum / n, sumSq / n };
     }
 
-    /** Add a person to the population of this kind of place
-     *  @param p the new person
-     *  @param s the associated schedule
+    /** The infection rate each contageous person adds, in places of this kind
+     *  @return the rate, per second
      */
-    public void populate(Person p, Schedule s) {
-        people.add(new PersonSchedule(p, s));
+    double transmissivity() {
+        return transmissivity;
     }
 
     /** Distribute the people from all PlaceKinds to their individual places
-     *  Prior to this, each PlaceKind knows all the people that will be
-     *  associated with places of that kind, a list constructed by populate().
-     *  This calls findPlace to create or find places.
+     *  @param t -- the topology the people belong to
+     *  @param members -- for each PlaceKind, by index, the people
+     *  associated with places of that kind, as built by Role.populateRoles.
+     *  @param rand -- the random stream to draw from
+     *  Places are numbered as needed, each with a log-normally distributed
+     *  capacity, and filled one at a time.
      */
-    public static void distributePeople() {
+    public static void distributePeople(
+        Topology t, int[][] members, MyRandom rand
+    ) {
 
         // for each kind of place
-        for (PlaceKind pk: allPlaceKinds) {
+        for (PlaceKind pk: t.model.placeKinds) {
+            final int[] people = members[pk.index];
+            final int[] placeOf = t.placeOf[pk.index];
+            int unfilledPlace = -1; // a place of this kind being filled
+            int unfilledCapacity = 0; // capacity of unfilledPlace
+
             // shuffle its people to break correlations from people to places
-            Collections.shuffle(pk.people, MyRandom.stream);
+            for (int i = people.length - 1; i > 0; i--) {
+                final int j = rand.nextInt(i + 1);
+                final int p = people[i];
+                people[i] = people[j];
+                people[j] = p;
+            }
 
             // for each person, associate that person with a specific place
-            for (PersonSchedule ps: pk.people) {
-                ps.person.emplace(pk.findPlace(), ps.schedule);
+            for (int p: people) {
+                if (unfilledCapacity <= 0) { // need to make a new place
+                    // make new place using a log-normal distribution for size
+                    unfilledCapacity = (int) Math.round(
+                        rand.nextLogNormal(pk.median, pk.sigma)
+                    );
+                    unfilledPlace = t.addPlace(pk);
+                }
+                unfilledCapacity = unfilledCapacity - 1;
+                placeOf[p] = unfilledPlace;
             }
         }
     }
+}
 
-    /** Find a category of place, by name
-     *  @param n -- the name of the category
-     *  @return the PlaceKind with that name, or null if none has been defined
+/** Closing or reopening every place of a kind, from a given day
+ *  @see Simulation#close
+ *  @see Simulation#reopen
+ *  Interventions are part of the model, and each simulation carries them
+ *  out as scheduled events.
+ */
+class Intervention {
+    public final PlaceKind kind; // the kind of place affected
+    public final double day; // when, in days from the start
+    public final boolean open; // reopen, rather than close?
+
+    /** Construct an intervention by scanning an input stream
+     *  @param in -- the input stream
+     *  @param m -- the model this intervention belongs to
+     *  @param o -- true to reopen, false to close
+     *  Syntax: close name day ; or open name day ;
+     *  The keyword has already been scanned.
      */
-    public static PlaceKind findPlaceKind(String n) {
-        for (PlaceKind pk: allPlaceKinds) {
-            if (pk.name.equals(n)) return pk;
+    public Intervention(MyScanner in , Model m, boolean o) {
+        open = o;
+        final String verb = o ? "open" : "close";
+        final String name = in .getNextName("???",
+            () -> verb + ": place name expected"
+        );
+        kind = m.findPlaceKind(name);
+        day = in .getNextFloat(0.0,
+            () -> verb + " " + name + ": day expected"
+        ); in .getNextLiteral(
+            MyScanner.semicolon,
+            () -> verb + " " + name + " " + day + ": missing ;"
+        );
+        check(m, name);
+    }
+
+    /** Construct an intervention directly, without scanning
+     *  @param m -- the model this intervention belongs to
+     *  @param name -- the name of the kind of place affected
+     *  @param d -- the day, from the start, it takes effect
+     *  @param o -- true to reopen, false to close
+     */
+    public Intervention(Model m, String name, double d, boolean o) {
+        open = o;
+        kind = m.findPlaceKind(name);
+        day = d;
+        check(m, name);
+    }
+
+    /** Check a new intervention and add it to its model
+     *  @param m -- the model this intervention belongs to
+     *  @param name -- the name of the kind of place, as given
+     */
+    private void check(Model m, String name) {
+        final String verb = open ? "open" : "close";
+        if (kind == null) {
+            Error.warn(verb + " " + name + ": undefined place?");
+        }
+        Check.nonNeg(day, 0.0,
+            () -> verb + " " + name + " " + day + ": negative day?"
+        );
+        m.interventions.add(this);
+    }
+
+    /** Copy an intervention into another model
+     *  @param i -- the intervention to copy
+     *  @param m -- the model the copy belongs to, with copied place kinds
+     */
+    public Intervention(Intervention i, Model m) {
+        kind = (i.kind == null) ? null : m.placeKinds.get(i.kind.index);
+        day = i.day;
+        open = i.open;
+        m.interventions.add(this);
+    }
+
+    /** convert an intervention back to textual form
+     *  @return the intervention as it would be in a model file
+     */
+    public String toString() {
+        return (open ? "open " : "close ") + kind.name + " " + day + ";";
+    }
+
+    /** Schedule this intervention in a simulation
+     *  @param sim -- the simulation
+     */
+    void schedule(Simulation sim) {
+        if (kind == null) return; // already complained about
+        if (open) {
+            sim.schedule(day * Time.day, (double t) -> sim.reopen(t, kind));
+        } else {
+            sim.schedule(day * Time.day, (double t) -> sim.close(kind));
         }
-        return null; // category not found
     }
 }
 
@@ -649,8 +1335,30 @@ class Schedule {
             () -> context.myString() + "(" + st + "-" + et +
             ": not followed by )"
         );
+        check(st, et, context);
+        startTime = st * Time.hour;
+        endTime = et * Time.hour;
+    }
+
+    /** construct a new Schedule directly, without scanning
+     *  @param st -- the start time, in hours from midnight
+     *  @param et -- the end time, in hours from midnight
+     *  @param context -- the context for error messages
+     */
+    public Schedule(double st, double et, MyScanner.Message context) {
+        check(st, et, context);
+        startTime = st * Time.hour;
+        endTime = et * Time.hour;
+    }
 
-        // check sanity constraints on start and end times
+    /** check sanity constraints on start and end times
+     *  @param st -- the start time, in hours from midnight
+     *  @param et -- the end time, in hours from midnight
+     *  @param context -- the context for error messages
+     */
+    private static void check(
+        double st, double et, MyScanner.Message context
+    ) {
         if (st >= 24.00F) {
             Error.warn(
                 context.myString() + "(" + st + "-" + et +
@@ -667,8 +1375,6 @@ class Schedule {
                 "): times out of order"
             );
         }
-        startTime = st * Time.hour;
-        endTime = et * Time.hour;
     }
 
     /** contert a Schedule back to textual form
@@ -682,20 +1388,19 @@ class Schedule {
 }
 
 /** Statistical Description of the disease progress
+ *  Rules are never changed once constructed, so they may be shared freely.
  */
 class InfectionRule {
     private final double median; // median of the distribution
+    private final double scatter; // scatter of the distribution
     private final double sigma; // sigma of the distribution
     private final double recovery; // recovery probability
 
-    private static final MyRandom rand = MyRandom.stream();
-
     /** construct a new InfectionRule
      *  @param in -- the input stream
      *  @param context -- the context for error messages
      */
     public InfectionRule(MyScanner in , MyScanner.Message context) {
-        final double scatter;
         median = Time.day * in .getNextFloat(1.0,
             () -> context.myString() + ": median expected"
         );
@@ -715,7 +1420,55 @@ class InfectionRule {
             recovery = 0.0;
         }
 
-        // sanity checks on the values
+        check(context);
+
+        // we do this up front so scatter is never needed in simulation.
+        sigma = Math.log((scatter + median) / median);
+    }
+
+    /** convert a rule back to textual form
+     *  @return the median, scatter and recovery probability, as in a file
+     */
+    public String toString() {
+        return median / Time.day + " " + scatter / Time.day + " " + recovery;
+    }
+
+    /** construct a variation on an InfectionRule
+     *  @param m -- the new median, in seconds
+     *  @param s -- the new scatter, in seconds
+     *  @param p -- the new recovery probability
+     *  @param context -- the context for error messages
+     */
+    private InfectionRule(
+        double m, double s, double p, MyScanner.Message context
+    ) {
+        median = m;
+        scatter = s;
+        recovery = p;
+        check(context);
+        sigma = Math.log((scatter + median) / median);
+    }
+
+    /** construct a new InfectionRule directly, without scanning
+     *  @param median -- the median, in days
+     *  @param scatter -- the scatter, in days
+     *  @param recovery -- the recovery probability
+     *  @param context -- the context for error messages
+     *  @return the new rule
+     */
+    public static InfectionRule of(
+        double median, double scatter, double recovery,
+        MyScanner.Message context
+    ) {
+        return new InfectionRule(
+            Time.day * median, Time.day * scatter, recovery, context
+        );
+    }
+
+    /** sanity checks on the values
+     *  @param context -- the context for error messages
+     */
+    private void check(MyScanner.Message context) {
         Check.positive(median, 0.0,
             () -> context.myString() + " " + median + " " + scatter +
             " " + recovery + ": non-positive median?"
@@ -734,22 +1487,65 @@ class InfectionRule {
                 " " + recovery + ": recovery probability greater than zero?"
             );
         }
+    }
 
-        // we do this up front so scatter is never seen again.
-        sigma = Math.log((scatter + median) / median);
+    /** Make a copy of this rule with one field changed
+     *  @param field -- median, scatter or recovery
+     *  @param value -- the new value, in the units used in model files
+     *  @param context -- the context for error messages
+     *  @return the new rule, or null if there is no such field
+     */
+    public InfectionRule with(
+        String field, double value, MyScanner.Message context
+    ) {
+        if ("median".equals(field)) {
+            return new InfectionRule(
+                Time.day * value, scatter, recovery, context
+            );
+        } else if ("scatter".equals(field)) {
+            return new InfectionRule(
+                median, Time.day * value, recovery, context
+            );
+        } else if ("recovery".equals(field)) {
+            return new InfectionRule(median, scatter, value, context);
+        }
+        return null;
     }
 
     /** Toss the dice to see if someone recovers under the terms of this rule
+     *  @param rand -- the random stream to use
      *  @return true if recovers, false if not
      */
-    public boolean recover() {
+    public boolean recover(MyRandom rand) {
         return rand.nextFloat() <= recovery;
     }
 
+    /** The probability of recovery at the end of this disease state
+     *  @return the probability
+     */
+    public double recovery() {
+        return Math.min(recovery, 1.0);
+    }
+
+    /** The mean duration of this disease state
+     *  @return the mean, in seconds
+     */
+    public double mean() {
+        return median * Math.exp(sigma * sigma / 2);
+    }
+
+    /** The mean square duration of this disease state
+     *  @return the mean of the square of the duration, in seconds squared
+     */
+    public double meanSquare() {
+        return median * median * Math.exp(2 * sigma * sigma);
+    }
+
     /** Toss the dice to see how long this disease state lasts under this rule
+     *  @param rand -- the random stream to use
      *  @return the time until the next change of disease state
      */
-    public double duration() {
+    public double duration(MyRandom rand) {
         return rand.nextLogNormal(median, sigma);
     }
 }
@@ -773,24 +1569,25 @@ class Role {
 
     // instance variables
     public final String name; // name of this role
+    final int index;          // position of this role in its model
+    PlaceKind homeKind = null; // the kind of place that is home
     private final LinkedList<PlaceSchedule> placeKinds = new LinkedList<>();
 
     private double fraction;  // fraction of the population in this role
-    private int number;       // number of people in this role
 
-    // static variables used for summary of all roles
-    private static double sum = 0.0F; // sum of all the fractions
-    private static LinkedList<Role> allRoles = new LinkedList<Role>();
+    // the scheduled places, by visit, as people of this role go through
+    // them; the index of the kind of place, and the schedule
+    int[] visitKind;
+    Schedule[] visitSchedule;
 
     /** Construct a new role by scanning an input stream
      *  @param in -- the input stream
+     *  @param m -- the model this role belongs to
      *  The stream must contain the role name, and the number or fraction
      *  of the population in that role.
      *  All role specifications end with a semicolon.
      */
-    public Role( MyScanner in ) {
-	    PlaceKind homePlaceKind = null; // the home place for this role
-
+    public Role( MyScanner in, Model m ) {
 	    name = in.getNextName( "???", ()-> "role with no name" );
 	    fraction = in.getNextFloat(
 	        9.9999F, ()-> "role " + name + ": not followed by population"
@@ -803,7 +1600,7 @@ class Role {
 	        String placeName = in.getNextName( "???",
                 ()->"role " + name + " " + fraction + ": place name expected"
 	        );
-	        PlaceKind pk = PlaceKind.findPlaceKind( placeName );
+	        PlaceKind pk = m.findPlaceKind( placeName );
 	        Schedule s = null;
 
 	        // is placeName followed a schedule?
@@ -813,64 +1610,147 @@ class Role {
 		        );
 	        }
 
-	        // was it a real place name?
-	        if (pk == null) {
-		        Error.warn(
-                    this.describe() + " " + placeName + ": undefined place?"
-		       );
-	        }
-
-	        // see if this role is already associated with PlaceKind pk
-	        boolean duplicated = false;
-	        if (pk != null) {
-		        if (pk == homePlaceKind) duplicated = true;
-		        for (PlaceSchedule ps: placeKinds) {
-		            if (ps.placeKind == pk) duplicated = true;
-                }
-	        }
-	        if (duplicated) {
-		        Error.warn(
-                    this.describe() + " " + placeName + ": place name reused?"
-		        );
-	        } else { // only record non-duplicate entries
-                placeKinds.add( new PlaceSchedule( pk, s ) );  // schedule all
-		        if (s == null) {
-		            if (homePlaceKind != null) Error.warn(
-                        this.describe() + " " + placeName + ": a second home?"
-		            );
-		        homePlaceKind = pk;
-		        }
-	        }
+	        addPlace( pk, placeName, s );
 	        hasNext = in.hasNext();
 	    }
         if (!hasNext) Error.warn(this.describe() + ": missing semicolon?");
 
-	    // complain if the name is not unique
-	    if (findRole( name ) != null) {
-	        Error.warn( this.describe() + ": role name reused?" );
-	    }
-	    // force the fraction or population to be positive
-	    fraction = Check.positive( fraction, 0.0F,
-	        ()-> this.describe() + ": negative population?"
-	    );
-	    sum = sum + fraction;
+	    check( m );
+	    index = m.roles.size();
+	    m.roles.add( this ); // include this role in the list of all roles
+    }
 
-	    // complain if no places for this role
-	    if (homePlaceKind == null) {
-	       Error.warn( this.describe() + ": no home specified?" );
-	    }
-	    if (placeKinds.isEmpty()) {
-	        Error.warn( this.describe() + ": has no places?" );
-	    }
-	    // complain if two events overlap
-	    if (overlappingSchedules()) {
-            Error.warn (this.describe() + ": has overlapping schedule times?");
+    /** Construct a new role directly, without scanning
+     *  @param m -- the model this role belongs to
+     *  @param n -- the role name
+     *  @param f -- the number or fraction of the population in this role
+     *  @param places -- the names of the kinds of place this role visits
+     *  @param schedules -- the schedule for each place, null for home
+     *  The role gets the same checks as when it is scanned.
+     */
+    public Role(
+        Model m, String n, double f,
+        List < String > places, List < Schedule > schedules
+    ) {
+        name = n;
+        fraction = f;
+        for (int i = 0; i < places.size(); i++) {
+            final String placeName = places.get( i );
+            addPlace( m.findPlaceKind( placeName ), placeName,
+                schedules.get( i )
+            );
         }
-
-	    allRoles.add( this ); // include this role in the list of all roles
+        check( m );
+        index = m.roles.size();
+        m.roles.add( this ); // include this role in the list of all roles
     }
 
-    /** Produce a reasonably full textual description of this role
+    /** Associate a kind of place with this role, during construction
+     *  @param pk -- the kind of place, null if it was not found
+     *  @param placeName -- the name it was given by
+     *  @param s -- the schedule for visits, null if this is home
+     */
+    private void addPlace( PlaceKind pk, String placeName, Schedule s ) {
+        // was it a real place name?
+        if (pk == null) {
+            Error.warn(
+                this.describe() + " " + placeName + ": undefined place?"
+            );
+        }
+
+        // see if this role is already associated with PlaceKind pk
+        boolean duplicated = false;
+        if (pk != null) {
+            if (pk == homeKind) duplicated = true;
+            for (PlaceSchedule ps: placeKinds) {
+                if (ps.placeKind == pk) duplicated = true;
+            }
+        }
+        if (duplicated) {
+            Error.warn(
+                this.describe() + " " + placeName + ": place name reused?"
+            );
+        } else { // only record non-duplicate entries
+            placeKinds.add( new PlaceSchedule( pk, s ) );  // schedule all
+            if (s == null) {
+                if (homeKind != null) Error.warn(
+                    this.describe() + " " + placeName + ": a second home?"
+                );
+                homeKind = pk;
+            }
+        }
+    }
+
+    /** Check a newly constructed role, once all its places are known
+     *  @param m -- the model this role is joining
+     */
+    private void check( Model m ) {
+        // complain if the name is not unique
+        if (m.findRole( name ) != null) {
+            Error.warn( this.describe() + ": role name reused?" );
+        }
+        // force the fraction or population to be positive
+        fraction = Check.positive( fraction, 0.0F,
+            ()-> this.describe() + ": negative population?"
+        );
+        m.roleSum = m.roleSum + fraction;
+
+        // complain if no places for this role
+        if (homeKind == null) {
+            Error.warn( this.describe() + ": no home specified?" );
+        }
+        if (placeKinds.isEmpty()) {
+            Error.warn( this.describe() + ": has no places?" );
+        }
+        // complain if two events overlap
+        if (overlappingSchedules()) {
+            Error.warn (this.describe() + ": has overlapping schedule times?");
+        }
+        listVisits();
+    }
+
+    /** Make the arrays of scheduled places, once all places are known
+     */
+    private void listVisits() {
+        int visits = 0;
+        for (PlaceSchedule ps: placeKinds) {
+            if ((ps.schedule != null) && (ps.placeKind != null)) visits++;
+        }
+        visitKind = new int[visits];
+        visitSchedule = new Schedule[visits];
+        visits = 0;
+        for (PlaceSchedule ps: placeKinds) {
+            if ((ps.schedule != null) && (ps.placeKind != null)) {
+                visitKind[visits] = ps.placeKind.index;
+                visitSchedule[visits] = ps.schedule;
+                visits++;
+            }
+        }
+    }
+
+    /** Copy a role into another model
+     *  @param r -- the role to copy
+     *  @param m -- the model the copy belongs to
+     *  The place kinds of m must already be copied, they replace those of r.
+     */
+    public Role( Role r, Model m ) {
+        name = r.name;
+        index = r.index;
+        fraction = r.fraction;
+        if (r.homeKind != null) {
+            homeKind = m.placeKinds.get( r.homeKind.index );
+        }
+        for (PlaceSchedule ps: r.placeKinds) {
+            placeKinds.add( new PlaceSchedule(
+                m.placeKinds.get( ps.placeKind.index ), ps.schedule
+            ) );
+        }
+        visitKind = r.visitKind;
+        visitSchedule = r.visitSchedule;
+        m.roles.add( this );
+    }
+
+    /** Produce a reasonably full textual description of this role
      *  @return the description
      *  This shortens many error messages
      */
@@ -878,6 +1758,18 @@ class Role {
 	    return "role " + name + " " + fraction;
     }
 
+    /** convert a role back to textual form
+     *  @return the role as it would be in a model file
+     */
+    public String toString() {
+        final StringBuilder sb = new StringBuilder( describe() );
+        for (PlaceSchedule ps: placeKinds) {
+            sb.append( ' ' ).append( ps.placeKind.name );
+            if (ps.schedule != null) sb.append( ' ' ).append( ps.schedule );
+        }
+        return sb.append( ';' ).toString();
+    }
+
     /** Check if the person's schedule has overlapping times
      *  @author Andy Chen
      *  @return true if there is or false if there isn't
@@ -901,41 +1793,49 @@ class Role {
         return false;
     }
 
-    /** Find a role, by name
-     *  @param n -- the name of the role
-     *  @return the role with that name, or null if none has been defined
-     */
-    private static Role findRole( String n ) {
-	    for (Role r: allRoles) {
-	        if (r.name.equals( n )) return r;
-	    }
-	    return null; // role not found
-    }
-
     /** Create the total population, divided up by roles in
-     *  @param population -- the total population to be created
-     *  @param infected -- the total number of initially infected people
+     *  @param t -- the topology to populate
+     *  @param rand -- the random stream to draw from
      *  The math here divides the population in the ratio of the numbers
-     *  given for each role.
+     *  given for each role; the model gives the total population and
+     *  the number initially infected.
      *  It is critical that this not be done until all roles are known.
      */
-    public static void populateRoles( int population, int infected ) {
-        int pop = population; // working copy used only in infection decisions
-        int inf = infected;   // working copy used only in infection decisions
-        final MyRandom rand = MyRandom.stream;
-
-	    if (allRoles.isEmpty()) Error.fatal( "no roles specified" );
-	    for (Role r: allRoles) {
-	        // how many people are in this role
-	        r.number = (int)Math.round( (r.fraction / r.sum) * population );
+    public static void populateRoles( Topology t, MyRandom rand ) {
+        final Model m = t.model;
+        int pop = m.population; // working copy used only in infection decisions
+        int inf = m.infected;   // working copy used only in infection decisions
+
+	    if (m.roles.isEmpty()) Error.fatal( "no roles specified" );
+
+        // how many people are in each role, and associated with each kind
+        final int[] number = new int[m.roles.size()];
+        final int[] memberCount = new int[m.placeKinds.size()];
+	    for (Role r: m.roles) {
+	        number[r.index] = r.number( m );
+            t.people = t.people + number[r.index];
+	        for (PlaceSchedule ps: r.placeKinds) {
+                memberCount[ps.placeKind.index] += number[r.index];
+            }
+        }
+        t.role = new int[t.people];
+        t.placeOf = new int[m.placeKinds.size()][t.people];
+        final int[][] members = new int[m.placeKinds.size()][];
+        for (int k = 0; k < members.length; k++) {
+            members[k] = new int[memberCount[k]];
+            memberCount[k] = 0; // from here on, members filled in so far
+            Arrays.fill( t.placeOf[k], -1 );
+        }
 
+        int id = 0; // the number of the next person
+	    for (Role r: m.roles) {
 	        // make that many people and infect the right number at random
-	        for (int i = 0; i < r.number; i++) {
-		        Person p = new Person( r );
+	        for (int i = 0; i < number[r.index]; i++) {
+                t.role[id] = r.index;
 
 	            // the ratio inf/pop is probability this person is infected
                 if (rand.nextFloat() < ((float)inf / (float)pop)) {
-		            p.infect( 0.0 );
+		            t.infected.set( id );
 		            inf = inf - 1;
 		        }
 		        pop = pop - 1;
@@ -943,14 +1843,639 @@ class Role {
 	            // each person is associated all their role's place kinds
 		        // note that this does not create places yet
 		        for (PlaceSchedule ps: r.placeKinds) {
-		            ps.placeKind.populate( p, ps.schedule );
+                    final int k = ps.placeKind.index;
+		            members[k][memberCount[k]++] = id;
 		        }
+                id = id + 1;
 	        }
 	    }
 
 	    // finish putting people in their places
-	    // this actually creates the places and puts people in them
-	    PlaceKind.distributePeople();
+	    // this actually numbers the places and puts people in them
+	    PlaceKind.distributePeople( t, members, rand );
+    }
+
+    /** How many people have this role
+     *  @param m -- the model
+     *  @return this role's share of the population
+     */
+    int number( Model m ) {
+        return (int)Math.round( (fraction / m.roleSum) * m.population );
+    }
+
+    /** How many times a person in this role moves a day
+     *  @return the number of moves, two for each scheduled place
+     */
+    int movesPerDay() {
+        int moves = 0;
+        for (PlaceSchedule ps: placeKinds) {
+            if (ps.schedule != null) moves = moves + 2;
+        }
+        return moves;
+    }
+
+    /** Count the people associated with each kind of place
+     *  @param n -- the number of people in this role
+     *  @param members -- the counts, by index of place kind
+     */
+    void addMembers( int n, long[] members ) {
+        for (PlaceSchedule ps: placeKinds) members[ps.placeKind.index] += n;
+    }
+
+    /** Collect the times at which people in this role move
+     *  @param times -- where to put them
+     *  @param day -- the day, the times are for moves on this day
+     */
+    void scheduleTimes( TreeSet<Double> times, double day ) {
+        for (PlaceSchedule ps: placeKinds) {
+            if (ps.schedule != null) {
+                times.add( day * Time.day + ps.schedule.startTime );
+                times.add( day * Time.day + ps.schedule.endTime );
+            }
+        }
+    }
+
+    /** Create a person of this role from a topology
+     *  @param sim -- the simulation the person is part of
+     *  @param id -- the number of the person in sim's topology
+     *  @return the person, at home
+     *  The person's other places are found from the topology as needed.
+     */
+    Person instantiate( Simulation sim, int id ) {
+        final Topology t = sim.topology;
+        final Person p = new Person( sim, this, id );
+        if (t.infected.get( id )) p.infect( 0.0 );
+        p.emplace( sim.place( t.placeOf[homeKind.index][id] ) );
+        return p;
+    }
+}
+
+/** The people and places of an elaborated model, without disease state
+ *  @see Role#populateRoles and PlaceKind#distributePeople, which build it
+ *  @see Simulation, which creates people and places from it
+ *  People and places are numbered from zero.  For each person, this gives
+ *  the role, whether initially infected, and the place of each kind the
+ *  person is linked to.  That is a few ints per person, much less than the
+ *  objects a simulation builds, and it is the same for every simulation
+ *  built from the same random stream.
+ *  A topology is never changed once constructed, so simulations may share
+ *  one, including simulations running concurrently; all that each of them
+ *  adds is the disease state, locations and events of its own run.
+ */
+class Topology {
+    final Model model; // the model elaborated
+    int people = 0; // number of people
+    int[] role; // role index, by person
+    final BitSet infected = new BitSet(); // people infected at the start
+    int[][] placeOf; // place number, by kind index then person, -1 if none
+    int places = 0; // number of places
+    int[] kindOf = new int[16]; // kind index, by place
+    String source = null; // where it came from, if not drawn from the model
+
+    /** Elaborate a model
+     *  @param m -- the model
+     *  @param rand -- the random stream to draw from
+     *  If m.locality, the result is renumbered, see reorder, and so
+     *  simulations of it differ from those of the model as drawn.
+     */
+    public Topology(Model m, MyRandom rand) {
+        model = m;
+        Role.populateRoles(this, rand);
+        if (m.locality) reorder();
+    }
+
+    /** Renumber people and places so those that meet are close together
+     *  Places are numbered breadth first over the graph of places linked
+     *  by the people they share, starting from place 0, and people are
+     *  numbered as they are reached, each household all at once.  As a
+     *  simulation creates people and places in order of number, that puts
+     *  each household, and households that share other places, near each
+     *  other in memory.  It also makes contiguous ranges of places, as a
+     *  Partition splits them, hold places that share people.  Imported
+     *  topologies keep the numbers Census gives them.
+     */
+    private void reorder() {
+        final int kinds = placeOf.length;
+
+        // the members of each place, as in compressed sparse rows
+        final int[] start = new int[places + 1];
+        for (int[] of: placeOf) {
+            for (int i = 0; i < people; i++) {
+                if (of[i] >= 0) start[of[i] + 1]++;
+            }
+        }
+        for (int p = 0; p < places; p++) start[p + 1] += start[p];
+        final int[] member = new int[start[places]];
+        final int[] filled = Arrays.copyOf(start, places);
+        for (int[] of: placeOf) {
+            for (int i = 0; i < people; i++) {
+                if (of[i] >= 0) member[filled[of[i]]++] = i;
+            }
+        }
+
+        // the new numbers, -1 until reached
+        final int[] person = new int[people];
+        final int[] place = new int[places];
+        Arrays.fill(person, -1);
+        Arrays.fill(place, -1);
+        int nextPerson = 0;
+        int nextPlace = 0; // also the number of places queued
+        final int[] queue = new int[places]; // old numbers, in order
+        int head = 0;
+        for (int root = 0; root < places; root++) {
+            if (place[root] >= 0) continue;
+            place[root] = nextPlace;
+            queue[nextPlace++] = root;
+            while (head < nextPlace) {
+                final int q = queue[head++];
+                for (int j = start[q]; j < start[q + 1]; j++) {
+                    if (person[member[j]] >= 0) continue;
+                    final int h = home(member[j]);
+                    for (int l = start[h]; l < start[h + 1]; l++) {
+                        final int x = member[l];
+                        if ((person[x] >= 0) || (home(x) != h)) {
+                            continue; // numbered already, or a visitor
+                        }
+                        person[x] = nextPerson++;
+                        for (int k = 0; k < kinds; k++) {
+                            final int w = placeOf[k][x];
+                            if ((w >= 0) && (place[w] < 0)) {
+                                place[w] = nextPlace;
+                                queue[nextPlace++] = w;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        if ((nextPerson != people) || (nextPlace != places)) {
+            // someone's home links them to no place, so they went unreached
+            throw new IllegalStateException(
+                "reorder reached " + nextPerson + " of " + people
+                + " people and " + nextPlace + " of " + places + " places"
+            );
+        }
+
+        // move everything to its new number
+        final int[] newRole = new int[people];
+        final BitSet newInfected = new BitSet();
+        for (int i = 0; i < people; i++) {
+            newRole[person[i]] = role[i];
+            if (infected.get(i)) newInfected.set(person[i]);
+        }
+        role = newRole;
+        infected.clear();
+        infected.or(newInfected);
+        for (int k = 0; k < kinds; k++) {
+            final int[] of = new int[people];
+            for (int i = 0; i < people; i++) {
+                of[person[i]] = (placeOf[k][i] < 0) ? -1 : place[placeOf[k][i]];
+            }
+            placeOf[k] = of;
+        }
+        final int[] newKind = new int[places];
+        for (int p = 0; p < places; p++) newKind[place[p]] = kindOf[p];
+        kindOf = newKind;
+    }
+
+    /** Make a topology with people but no places yet, for importing
+     *  @param m -- the model
+     *  @param n -- the number of people
+     *  @see Census
+     */
+    Topology(Model m, int n) {
+        model = m;
+        people = n;
+        role = new int[n];
+        placeOf = new int[m.placeKinds.size()][n];
+        for (int[] p: placeOf) Arrays.fill(p, -1);
+    }
+
+    /** Number a new place
+     *  @param pk -- its kind
+     *  @return its number
+     */
+    int addPlace(PlaceKind pk) {
+        if (places == kindOf.length) {
+            kindOf = Arrays.copyOf(kindOf, 2 * places);
+        }
+        kindOf[places] = pk.index;
+        places = places + 1;
+        return places - 1;
+    }
+
+    /** The home of a person
+     *  @param id -- the number of the person
+     *  @return the number of their home place
+     */
+    int home(int id) {
+        return placeOf[model.roles.get(role[id]).homeKind.index][id];
+    }
+}
+
+/** Import of an explicit population, from CSV tables
+ *  @see Topology, which this builds instead of Role#populateRoles
+ *  The people table has a line for each person, id,role or id,role,1 for
+ *  people infected at the start.  The membership table has a line for each
+ *  link from a person to a place, person,kind,place, where the place id
+ *  picks out one place of that kind, so a household and a workplace may
+ *  have the same id.  Ids are non-negative integers, roles and kinds are
+ *  names from the model, and a first line not beginning with a digit is a
+ *  header.  If nobody is marked infected, the model's infected number are
+ *  picked at random.
+ *
+ *  Tables are memory-mapped in chunks that are parsed in parallel, each
+ *  into arrays of its own that are joined in file order.  People are
+ *  numbered in order of id and places in order of kind then id, so the
+ *  topology depends only on what the tables hold.
+ */
+class Census {
+    private static final long chunkBytes = 64 << 20; // bytes parsed per task
+    private static final int maxLine = 4096; // longest line, in bytes
+    private static final int maxWarnings = 10; // per problem, then a count
+
+    private Census() {} // nobody should ever construct a census
+
+    // the parsed lines of one chunk of a table, or of all of it
+    private static final class Table {
+        long[] id = new long[1024]; // the first field
+        int[] name = new int[1024]; // index of the name in the second field
+        long[] value = new long[1024]; // the third field
+        int rows = 0;
+
+        void add(long i, int n, long v) {
+            if (rows == id.length) {
+                id = Arrays.copyOf(id, 2 * rows);
+                name = Arrays.copyOf(name, 2 * rows);
+                value = Arrays.copyOf(value, 2 * rows);
+            }
+            id[rows] = i;
+            name[rows] = n;
+            value[rows] = v;
+            rows = rows + 1;
+        }
+
+        void add(Table t) {
+            if (rows + t.rows > id.length) {
+                id = Arrays.copyOf(id, rows + t.rows);
+                name = Arrays.copyOf(name, rows + t.rows);
+                value = Arrays.copyOf(value, rows + t.rows);
+            }
+            System.arraycopy(t.id, 0, id, rows, t.rows);
+            System.arraycopy(t.name, 0, name, rows, t.rows);
+            System.arraycopy(t.value, 0, value, rows, t.rows);
+            rows = rows + t.rows;
+        }
+    }
+
+    // the numbers of ids, which are their positions in sorted order; found
+    // by looking them up in a table when the ids are close enough together
+    // for it to be small, else by binary search
+    private static final class Numbering {
+        private final long[] ids; // sorted
+        private final long min; // the smallest id
+        private final int[] table; // number by id - min, or null
+
+        Numbering(long[] sorted) {
+            ids = sorted;
+            min = (ids.length > 0) ? ids[0] : 0;
+            final long range = (ids.length > 0) ? ids[ids.length - 1] - min : 0;
+            if (range < 4L * ids.length) {
+                table = new int[(int) range + 1];
+                Arrays.fill(table, -1);
+                for (int i = 0; i < ids.length; i++) {
+                    table[(int) (ids[i] - min)] = i;
+                }
+            } else {
+                table = null;
+            }
+        }
+
+        // the number of an id, -1 if it is not one of them
+        int number(long id) {
+            if (table != null) {
+                final long i = id - min;
+                return ((i < 0) || (i >= table.length)) ? -1 : table[(int) i];
+            }
+            final int i = Arrays.binarySearch(ids, id);
+            return (i < 0) ? -1 : i;
+        }
+    }
+
+    /** Import a population
+     *  @param m -- the model, whose roles and kinds the tables name
+     *  @param people -- the name of the people table
+     *  @param memberships -- the name of the membership table
+     *  @param rand -- the random stream, to pick who is infected if needed
+     *  @param threads -- how many chunks to parse at once
+     *  @return the topology
+     *  The rows per second imported are reported on System.err.
+     */
+    public static Topology read(
+        Model m, String people, String memberships, MyRandom rand,
+        int threads
+    ) {
+        final long start = System.nanoTime();
+        final byte[][] roles = new byte[m.roles.size()][];
+        for (Role r: m.roles) {
+            roles[r.index] = r.name.getBytes(StandardCharsets.UTF_8);
+        }
+        final byte[][] kinds = new byte[m.placeKinds.size()][];
+        for (PlaceKind pk: m.placeKinds) {
+            kinds[pk.index] = pk.name.getBytes(StandardCharsets.UTF_8);
+        }
+
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final Table who;
+        final Table links;
+        try {
+            who = read(pool, people, roles, 0);
+            links = read(pool, memberships, kinds, -1);
+        } finally {
+            pool.shutdown();
+        }
+        Error.exitIfWarnings("Aborted due to errors in population");
+
+        // number the people in order of id
+        final long[] ids = Arrays.copyOf(who.id, who.rows);
+        Arrays.parallelSort(ids);
+        final Numbering persons = new Numbering(ids);
+        final Topology t = new Topology(m, ids.length);
+        int duplicates = 0;
+        for (int p = 1; p < ids.length; p++) {
+            if (ids[p] == ids[p - 1]) {
+                duplicates = problem(duplicates,
+                    people + ": person " + ids[p] + " given twice"
+                );
+            }
+        }
+        boolean marked = false; // was anybody marked infected?
+        for (int r = 0; r < who.rows; r++) {
+            final int p = persons.number(who.id[r]);
+            t.role[p] = who.name[r];
+            if (who.value[r] == 1) {
+                t.infected.set(p);
+                marked = true;
+            }
+        }
+        if (!marked) infect(t, m.infected, rand);
+
+        // number the places of each kind in order of id
+        final int[] count = new int[kinds.length];
+        for (int r = 0; r < links.rows; r++) count[links.name[r]]++;
+        final long[][] placeIds = new long[kinds.length][];
+        for (int k = 0; k < kinds.length; k++) {
+            placeIds[k] = new long[count[k]];
+            count[k] = 0;
+        }
+        for (int r = 0; r < links.rows; r++) {
+            final int k = links.name[r];
+            placeIds[k][count[k]++] = links.value[r];
+        }
+        final int[] base = new int[kinds.length]; // number of first place
+        final Numbering[] numbering = new Numbering[kinds.length];
+        for (int k = 0; k < kinds.length; k++) {
+            Arrays.parallelSort(placeIds[k]);
+            int unique = 0;
+            for (int i = 0; i < placeIds[k].length; i++) {
+                if ((i == 0) || (placeIds[k][i] != placeIds[k][i - 1])) {
+                    placeIds[k][unique++] = placeIds[k][i];
+                }
+            }
+            placeIds[k] = Arrays.copyOf(placeIds[k], unique);
+            numbering[k] = new Numbering(placeIds[k]);
+            base[k] = t.places;
+            t.places = t.places + unique;
+        }
+        t.kindOf = new int[t.places];
+        for (int k = 0; k < kinds.length; k++) {
+            Arrays.fill(t.kindOf, base[k], base[k] + placeIds[k].length, k);
+        }
+
+        // link people to their places
+        int strangers = 0; // links for people not in the people table
+        int twice = 0; // links for a kind a person already has a place of
+        for (int r = 0; r < links.rows; r++) {
+            final long id = links.id[r];
+            final int p = persons.number(id);
+            final int k = links.name[r];
+            if (p < 0) {
+                strangers = problem(strangers,
+                    memberships + ": person " + id + " not in " + people
+                );
+            } else if (t.placeOf[k][p] >= 0) {
+                twice = problem(twice, memberships + ": person " + id
+                    + " has two places of kind " + m.placeKinds.get(k).name
+                );
+            } else {
+                t.placeOf[k][p] = base[k] + numbering[k].number(links.value[r]);
+            }
+        }
+
+        // everyone needs a place of each kind their role goes to
+        int missing = 0;
+        for (int p = 0; p < t.people; p++) {
+            final Role r = m.roles.get(t.role[p]);
+            if ((r.homeKind != null) && (t.placeOf[r.homeKind.index][p] < 0)) {
+                missing = problem(missing, "person " + ids[p]
+                    + " (" + r.name + ") has no " + r.homeKind.name
+                );
+            }
+            for (int k: r.visitKind) {
+                if (t.placeOf[k][p] < 0) {
+                    missing = problem(missing, "person " + ids[p] + " ("
+                        + r.name + ") has no " + m.placeKinds.get(k).name
+                    );
+                }
+            }
+        }
+        for (int n: new int[] { duplicates, strangers, twice, missing }) {
+            if (n > maxWarnings) {
+                Error.warn("... and " + (n - maxWarnings) + " more like that");
+            }
+        }
+        Error.exitIfWarnings("Aborted due to errors in population");
+
+        t.source = "census " + describe(people) + " " + describe(memberships);
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf(
+            "imported %d people, %d places and %d memberships"
+            + " in %.2f s, %.0f rows per second%n",
+            t.people, t.places, links.rows, seconds,
+            (who.rows + links.rows) / seconds
+        );
+        return t;
+    }
+
+    // warn of a problem, unless there have been too many like it
+    private static int problem(int n, String msg) {
+        if (n < maxWarnings) Error.warn(msg);
+        return n + 1;
+    }
+
+    // the identity of a file, for cache keys
+    private static String describe(String name) {
+        final File f = new File(name);
+        return name + " " + f.length() + " " + f.lastModified();
+    }
+
+    /** Infect people at random, as Role.populateRoles does
+     *  @param t -- the topology
+     *  @param inf -- how many to infect
+     *  @param rand -- the random stream to draw from
+     */
+    private static void infect(Topology t, int inf, MyRandom rand) {
+        int pop = t.people;
+        for (int p = 0; p < t.people; p++) {
+            if (rand.nextFloat() < ((float) inf / (float) pop)) {
+                t.infected.set(p);
+                inf = inf - 1;
+            }
+            pop = pop - 1;
+        }
+    }
+
+    /** Read a table, a chunk at a time in parallel
+     *  @param pool -- the threads to parse with
+     *  @param file -- the name of the table
+     *  @param names -- the names allowed in the second field
+     *  @param missing -- the value if there is no third field, or -1 if
+     *  the third field is required
+     *  @return the lines of the table, in order
+     */
+    private static Table read(
+        ExecutorService pool, String file, byte[][] names, long missing
+    ) {
+        final Table all = new Table();
+        try (FileChannel ch = FileChannel.open(Paths.get(file))) {
+            final long size = ch.size();
+            final ArrayList < Future < Table >> chunks = new ArrayList < > ();
+            for (long at = 0; at < size; at = at + chunkBytes) {
+                final long from = at;
+                chunks.add(pool.submit(() -> parse(
+                    ch, file, from, Math.min(from + chunkBytes, size),
+                    names, missing
+                )));
+            }
+            for (Future < Table > c: chunks) all.add(c.get());
+        } catch (NoSuchFileException e) {
+            Error.fatal("could not open file: " + file);
+        } catch (IOException e) {
+            Error.fatal(file + ": " + e.getMessage());
+        } catch (InterruptedException | ExecutionException e) {
+            Error.fatal(file + ": " + e.getCause());
+        }
+        return all;
+    }
+
+    /** Parse the lines that begin within one chunk of a table
+     *  @param ch -- the table
+     *  @param file -- its name, for warnings
+     *  @param from -- where the chunk begins
+     *  @param to -- where the next chunk begins
+     *  @param names -- the names allowed in the second field
+     *  @param missing -- the value if there is no third field, or -1
+     *  @return the lines
+     *  The line in progress at from belongs to the chunk before, so the
+     *  mapping begins one byte early, to see if a line begins at from.
+     *  The last line may run up to maxLine bytes past to.
+     */
+    private static Table parse(
+        FileChannel ch, String file, long from, long to, byte[][] names,
+        long missing
+    ) throws IOException {
+        final long first = Math.max(from - 1, 0);
+        final MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY,
+            first, Math.min(to + maxLine, ch.size()) - first
+        );
+        final int end = b.limit();
+        final int stop = (int) (to - first); // lines must begin before this
+        final Table t = new Table();
+        int problems = 0;
+
+        int i = 0;
+        if (from > 0) { // skip the end of the line in progress
+            while ((i < end) && (b.get(i) != '\n')) i++;
+            i++;
+        } else if ((end > 0) && !digit(b.get(0))) { // skip a header
+            while ((i < end) && (b.get(i) != '\n')) i++;
+            i++;
+        }
+        while (i < stop) {
+            final int line = i;
+
+            // the id
+            long id = 0;
+            int digits = 0;
+            for (; (i < end) && digit(b.get(i)); i++, digits++) {
+                id = 10 * id + (b.get(i) - '0');
+            }
+            boolean ok = (digits > 0) && (i < end) && (b.get(i) == ',');
+            int n = -1;
+            long value = missing;
+            if (ok) {
+                // the name
+                final int nameStart = ++i;
+                while ((i < end) && !endOfField(b.get(i))) i++;
+                n = find(b, nameStart, i, names);
+
+                // the value, if any
+                if ((i < end) && (b.get(i) == ',')) {
+                    value = 0;
+                    digits = 0;
+                    for (i++; (i < end) && digit(b.get(i)); i++, digits++) {
+                        value = 10 * value + (b.get(i) - '0');
+                    }
+                    ok = digits > 0;
+                } else {
+                    ok = missing >= 0;
+                }
+                while ((i < end) && (b.get(i) == '\r')) i++;
+                ok = ok && ((i >= end) || (b.get(i) == '\n'));
+            }
+            while ((i < end) && (b.get(i) != '\n')) i++;
+
+            if (ok && (n >= 0)) {
+                t.add(id, n, value);
+            } else if (!blank(b, line, i)) {
+                problems = problem(problems, file + ": "
+                    + (ok ? "unknown name" : "bad line")
+                    + " at byte " + (first + line)
+                );
+            }
+            i++; // past the newline
+        }
+        return t;
+    }
+
+    // are bytes from to to of b a blank line?
+    private static boolean blank(ByteBuffer b, int from, int to) {
+        for (int i = from; i < to; i++) if (b.get(i) != '\r') return false;
+        return true;
+    }
+
+    // is this byte a decimal digit?
+    private static boolean digit(byte c) {
+        return (c >= '0') && (c <= '9');
+    }
+
+    // does this byte end a field?
+    private static boolean endOfField(byte c) {
+        return (c == ',') || (c == '\n') || (c == '\r');
+    }
+
+    // the index of the name in bytes from to to of b, -1 if none
+    private static int find(ByteBuffer b, int from, int to, byte[][] names) {
+        for (int n = 0; n < names.length; n++) {
+            if (names[n].length != to - from) continue;
+            int i = 0;
+            while ((i < names[n].length) && (names[n][i] == b.get(from + i))) {
+                i++;
+            }
+            if (i == names[n].length) return n;
+        }
+        return -1;
     }
 }
 
@@ -960,7 +2485,7 @@ class Role {
  */
 class Person {
 
-    private static enum DiseaseStates {
+    static enum DiseaseStates {
         uninfected,
         latent,
         asymptomatic,
@@ -971,337 +2496,4375 @@ class Person {
         // DiseaseStates.dead.ordinal()+1 is the number of disease states
     }
 
-    // population broken down by disease state
-    private static int[] popByState = new int[DiseaseStates.dead.ordinal() + 1];
+    /** the number of disease states */
+    static final int stateCount = DiseaseStates.dead.ordinal() + 1;
+
+    // instance variables created from model description
+    public final int id; // number of this person within its simulation
+    final Simulation sim; // the simulation this person is part of
+    private final Role role; // role of this person
+    private final boolean ghost; // stands in for a person elsewhere?
+    // the places are shared, from the role and the topology
 
-    // timing characteristics of disease state
-    private static InfectionRule latent;
-    private static InfectionRule asymptomatic;
-    private static InfectionRule symptomatic;
-    private static InfectionRule bedridden;
+    // what changes as the simulation progresses is in this person's record
+    // in sim.population, so this object stays small; a new person is
+    // uninfected, nowhere, and due to be infected at time 0.0, which
+    // allows for infection at startup
+    private static final DiseaseStates[] states = DiseaseStates.values();
 
-    public static void setDiseaseParameters(
-        InfectionRule l, InfectionRule a, InfectionRule s, InfectionRule b
-    ) {
-        latent = l;
-        asymptomatic = a;
-        symptomatic = s;
-        bedridden = b;
+    /** Construct a new person to perform some role
+     *  @param s -- the simulation this person is part of
+     *  @param r -- the role
+     *  @param i -- the number of this person in the topology
+     *  This constructor deliberately defers putting people in any places
+     *  @see Role#instantiate
+     */
+    public Person(Simulation s, Role r, int i) {
+        sim = s;
+        id = i;
+        role = r;
+        ghost = false;
+        sim.population.create(id, DiseaseStates.uninfected.ordinal());
+        sim.allPeople.add(this); // include this person in the list of all
+        count(+1); // include it in the statistics
+    };
+
+    /** Construct a ghost, standing in for a person simulated elsewhere
+     *  @param s -- the simulation this ghost is part of
+     *  @param r -- the role of the person
+     *  @param i -- the number of the person in the topology
+     *  @see Partition
+     *  Ghosts visit places of s on behalf of people in other partitions.
+     *  They are not counted in statistics, and when infected, they report
+     *  it to their partition instead of progressing through the disease.
+     */
+    public Person(Simulation s, Role r, int i, DiseaseStates state) {
+        sim = s;
+        id = i;
+        role = r;
+        ghost = true;
+        sim.population.create(id, state.ordinal());
     }
 
-    // linkage from person to place involves a schedule
-    private class PlaceSchedule {
-        public Place place;
-        public Schedule schedule;
-        public PlaceSchedule(Place p, Schedule s) {
-            place = p;
-            schedule = s;
+    /** Update the disease state of a ghost
+     *  @param s -- the state of the person it stands in for
+     */
+    void mirror(DiseaseStates s) {
+        assert ghost: "only ghosts mirror";
+        sim.population.state(id, s.ordinal());
+    }
+
+    /** Count or uncount this person in the statistics for their state
+     *  @param c -- +1 to count, -1 to uncount
+     */
+    private void count(int c) {
+        final int s = sim.population.state(id);
+        sim.popByState[s] += c;
+        sim.popByState[sim.roleBase + role.index * stateCount + s] += c;
+    }
+
+    /** Change this person's disease state, keeping statistics current
+     *  @param time -- the time of the change
+     *  @param s -- the new state
+     */
+    private void setState(double time, DiseaseStates s) {
+        final DiseaseStates from = state();
+        count(-1);
+        sim.population.state(id, s.ordinal());
+        count(+1);
+        if (sim.listener != null) {
+            sim.listener.stateChanged(time, this, from, s);
         }
     }
 
-    // instance variables created from model description
-    private final Role role; // role of this person
-    private Place home; // this person's home place, set by emplace
-    private final LinkedList < PlaceSchedule > places = new LinkedList < > ();
+    /** Where is this person?
+     *  @return the place they are in, or null if none
+     */
+    Place location() {
+        final int l = sim.population.location(id);
+        return (l < 0) ? null : sim.place(l);
+    }
+
+    /** Note where this person is
+     *  @param p -- the place they are now in, or null if none
+     *  @see Place#arrive and Place#depart, which alone should call this
+     */
+    void locate(Place p) {
+        sim.population.location(id, (p == null) ? -1 : p.id);
+    }
+
+    /** Where does this person live?
+     *  @return their home, null until emplaced
+     */
+    Place home() {
+        final int h = sim.population.home(id);
+        return (h < 0) ? null : sim.place(h);
+    }
+
+    /** When was this person infected?
+     *  @return the time, NaN if they have not been
+     */
+    double infectedAt() {
+        return sim.population.infected(id);
+    }
+
+    // methods used during model construction, at time 0.0
+
+    /** Associate this person to their home
+     *  @param p -- the place
+     */
+    public void emplace(Place p) {
+        assert home() == null: "Role guarantees only one home place";
+        sim.population.home(id, p.id);
+
+        p.arrive(this); // tell the location about new occupant
+    }
+
+    /** One of the places this person visits
+     *  @param v -- which visit of their role
+     *  @return the place
+     */
+    private Place visit(int v) {
+        return sim.place(sim.topology.placeOf[role.visitKind[v]][id]);
+    }
+
+    // simulation of behavior
+
+    /** Schedule the person's activity in a day
+     *  @author Andy Chen, Blake Thorson
+     *  @param day -- the day of the simulation
+     *  This is done at the day's midnight.  Visits to closed kinds of place
+     *  are not scheduled; the dead make none, but the bedridden may recover
+     *  before their visits, so move() decides for them.
+     */
+    public void dailySchedule(double day) {
+        if (state() != DiseaseStates.dead) {
+            for (int v = 0; v < role.visitKind.length; v++) {
+                if (!sim.isClosed(role.visitKind[v])) scheduleVisit(day, v);
+            }
+        }
+    }
+
+    /** Schedule one visit to a place
+     *  @param day -- the day of the visit
+     *  @param v -- which visit of their role
+     *  Closing the kind of place cancels the going, but not the coming
+     *  home, so anyone there when it closes still leaves.
+     */
+    private void scheduleVisit(double day, int v) {
+        final Place p = visit(v);
+        final Schedule s = role.visitSchedule[v];
+        sim.schedule(day * Time.day + s.startTime,
+            sim.generation, role.visitKind[v],
+            (double t) -> move(t, p)
+        );
+        sim.schedule(day * Time.day + s.endTime,
+            (double t) -> move(t, home())
+        );
+    }
+
+    /** Schedule visits to a kind of place again, after it reopens
+     *  @param time -- the time it reopens
+     *  @param k -- the kind of place
+     *  Visits that would have begun before time are not made, and those of
+     *  days not yet begun are left to dailySchedule.
+     */
+    void scheduleVisits(double time, PlaceKind k) {
+        if (state() == DiseaseStates.dead) return;
+        for (int v = 0; v < role.visitKind.length; v++) {
+            if (role.visitKind[v] != k.index) continue;
+            for (double day = Math.floor(time / Time.day);
+                day < sim.daysScheduled(); day++
+            ) {
+                if (day * Time.day + role.visitSchedule[v].startTime >= time) {
+                    scheduleVisit(day, v);
+                }
+            }
+        }
+    }
+
+    /** Move the person to their next place
+     *  @author Andy Chen
+     *  @param time -- the time the person goes at
+     *  @param p -- the place the person goes to
+     */
+    public void move(double time, Place p) {
+        final DiseaseStates s = state();
+        final Place from = location();
+        if (s != DiseaseStates.dead
+            && s != DiseaseStates.bedridden
+            && from != p) { // they may not have gone, if it was closed
+            final boolean isContageous = isContageous();
+            if (isContageous) from.contageous(time, -1);
+            from.depart(this);
+            if (isContageous) p.contageous(time, 1);
+            p.arrive(this);
+            p.scheduleInfectPerson(time, this);
+            if (sim.listener != null) sim.listener.moved(time, this, from, p);
+        }
+    }
+
+    /** Is this person contageous?
+     *  @return true if in a disease state that spreads the disease
+     */
+    boolean isContageous() {
+        final DiseaseStates s = state();
+        return (s == DiseaseStates.asymptomatic)
+            || (s == DiseaseStates.symptomatic)
+            || (s == DiseaseStates.bedridden);
+    }
+
+    /** Schedule the time at which a person will be infected
+     *  @param time -- the current time
+     *  @param meanDelay -- the delay until infection
+     */
+    public void scheduleInfect( double time, double meanDelay ) {
+        if (canBeInfected()) { // irrelevant if not
+            final MyRandom r = sim.rand( id, DiseaseStates.uninfected );
+            infectAfter( time, r.nextExponential( meanDelay ) );
+        }
+    }
+
+    /** Can this person be infected?
+     *  @return true if they are uninfected
+     */
+    boolean canBeInfected() {
+        return state() == DiseaseStates.uninfected;
+    }
+
+    /** Schedule the infection of this person after a drawn delay
+     *  @param time -- the current time
+     *  @param delay -- the delay until infection
+     */
+    void infectAfter( double time, double delay ) {
+        sim.population.infection( id, time + delay );
+        sim.schedule( time + delay, (double t)-> infect( t ) );
+    }
+
+    /** Cancel any scheduled infection of this person
+     *  The event stays scheduled, but infect() will ignore it.
+     */
+    void cancelInfect() {
+        sim.population.infection( id, Double.NaN ); // equal to no time
+    }
+
+    /** Infect this person
+     *  @param now -- the time of infection
+     *  This may be called on a person in any infection state and makes the
+     *  person latent.
+     *  This is a schedulable event service routine
+     */
+    public void infect(double now) {
+        if ((state() == DiseaseStates.uninfected) // no reinfection
+            &&
+            (sim.population.infection(id) == now) // if not rescheduled
+        ) {
+            if (ghost) { // the real person is elsewhere, tell them
+                sim.population.state(id, DiseaseStates.latent.ordinal());
+                sim.partition.infected(now, id);
+                return;
+            }
+
+            final MyRandom r = sim.rand(id, DiseaseStates.latent);
+            final double duration = sim.model.latent.duration(r);
+            final boolean recovers = sim.model.latent.recover(r);
+            sim.population.infected(id, now);
+            final Place location = location();
+            if (sim.durations != null) {
+                sim.durations.record(Durations.latent, duration);
+                if (location != null) { // not infected from the start
+                    final double then = location.infectorInfected(this);
+                    if (!Double.isNaN(then)) {
+                        sim.durations.record(Durations.generation, now - then);
+                    }
+                }
+            }
+
+            if (sim.translog != null) { // who might have done it?
+                sim.translog.begin(now, id, location);
+                if (location != null) location.logContageous(sim.translog);
+                sim.translog.commit();
+            }
+
+            // update statistics
+            setState(now, DiseaseStates.latent);
+            if (sim.listener != null) {
+                sim.listener.infected(now, this, location);
+            }
+
+            if (recovers) {
+                sim.schedule(now + duration, (double t) -> recover(t));
+            } else {
+                sim.schedule(
+                    now + duration, (double t) -> beContageous(t)
+                );
+            }
+        }
+    }
+
+    /** Infect this person, who was infected in another partition
+     *  @param now -- the time of infection
+     *  @see Partition
+     */
+    void infectedElsewhere(double now) {
+        if (state() == DiseaseStates.uninfected) {
+            sim.population.infection(id, now);
+            infect(now);
+        }
+    }
+
+    /** What disease state is this person in?
+     *  @return the state
+     */
+    DiseaseStates state() {
+        return states[sim.population.state(id)];
+    }
+
+    /** This person becomes contageous and asymptomatic
+     *  @param time -- the time of this state change
+     *  This may be called on a person in with a latent infection and makes the
+     *  person asymptomatic.
+     *  This is a schedulable event service routine
+     */
+    public void beContageous(double time) {
+        assert state() == DiseaseStates.latent: "not latent";
+        final MyRandom r = sim.rand(id, DiseaseStates.asymptomatic);
+        final double duration = sim.model.asymptomatic.duration(r);
+        final boolean recovers = sim.model.asymptomatic.recover(r);
+        if (sim.durations != null) {
+            sim.durations.record(Durations.asymptomatic, duration);
+        }
+
+        // update statistics
+        setState(time, DiseaseStates.asymptomatic);
+
+        // tell place that I'm sick
+        final Place location = location();
+        if (location != null) location.contageous(time, +1);
+
+        if (recovers) {
+            sim.schedule(time + duration, (double t) -> recover(t));
+        } else {
+            sim.schedule(time + duration, (double t) -> feelSick(t));
+        }
+    }
+
+    /** This person is contageous and starts feeling sick
+     *  @param time -- the time of this state change
+     *  This may be called on a person in with an asymptomatic infection and
+     *  makes the person symptomatic.
+     *  This is a schedulable event service routine
+     */
+    public void feelSick(double time) {
+        assert state() == DiseaseStates.asymptomatic: "not asymptomatic";
+        final MyRandom r = sim.rand(id, DiseaseStates.symptomatic);
+        final double duration = sim.model.symptomatic.duration(r);
+        final boolean recovers = sim.model.symptomatic.recover(r);
+        if (sim.durations != null) {
+            sim.durations.record(Durations.symptomatic, duration);
+        }
+
+        // update statistics
+        setState(time, DiseaseStates.symptomatic);
+
+        if (recovers) {
+            sim.schedule(time + duration, (double t) -> recover(t));
+        } else {
+            sim.schedule(time + duration, (double t) -> goToBed(t));
+        }
+    }
+
+    /** This person is contageous and feels so bad they go to bed
+     *  @author Andy Chen
+     *  @param time -- the time of this state change
+     *  This may be called on a person in with an symptomatic infection and
+     *  makes the person bedridden.
+     *  This is a schedulable event service routine
+     */
+    public void goToBed(double time) {
+        assert state() == DiseaseStates.symptomatic: "not symptomatic";
+        final MyRandom r = sim.rand(id, DiseaseStates.bedridden);
+        final double duration = sim.model.bedridden.duration(r);
+        final boolean recovers = sim.model.symptomatic.recover(r);
+        if (sim.durations != null) {
+            sim.durations.record(Durations.bedridden, duration);
+        }
+
+        // update statistics
+        setState(time, DiseaseStates.bedridden);
+
+        if (recovers) {
+            sim.schedule(time + duration, (double t) -> recover(t));
+        } else {
+            sim.schedule(time + duration, (double t) -> die(t));
+        }
+    }
+
+    /** This person gets better
+     *  @param time -- the time of this state change
+     *  This may be called on a person in any infected disease state
+     *  and leaves the person well and immune from further infection.
+     *  This is a schedulable event service routine
+     */
+    public void recover(double time) {
+        final boolean wasContageous = isContageous();
+
+        // update statistics
+        setState(time, DiseaseStates.recovered);
+
+        final Place location = location();
+        if (wasContageous && (location != null)) {
+            location.contageous(time, -1);
+        }
+    }
+
+    /** This person dies
+     *  @param time -- the time of this state change
+     *  This may be called on a bedridden person and
+     *  makes the person die.
+     *  This is a schedulable event service routine
+     */
+    public void die(double time) {
+        assert state() == DiseaseStates.bedridden: "not bedridden";
+        if (sim.durations != null) {
+            sim.durations.record(Durations.toDeath, time - infectedAt());
+        }
+        // update statistics
+        setState(time, DiseaseStates.dead);
+
+        final Place location = location();
+        if (location != null) {
+            location.contageous(time, -1);
+            location.depart(this);
+        }
+
+        // no new event is scheduled.
+    }
+
+    // reporting tools
+
+    /** Report population statistics at the given time
+     *  @param sim -- the simulation to report on
+     *  @param time
+     *  Intended to be scheduled as an event at time zero, initiates a
+     *  sequence of reporting events, daily unless the simulation's
+     *  reportInterval is changed.
+     *  Each report goes to the simulation's reporter, which by default
+     *  prints a CSV line, see csv().
+     */
+    public static void report(Simulation sim, double time) {
+        sim.reporter.report(time, sim.popByState);
+
+        // schedule the next report
+        sim.schedule(time + sim.reportInterval,
+            (double t) -> Person.report(sim, t)
+        );
+    }
+
+    /** Format population statistics as a CSV line
+     *  @param time -- the time of the statistics
+     *  @param pop -- the population in each disease state
+     *  @return the time in days and the population for each disease state
+     */
+    public static String csv(double time, int[] pop) {
+        return appendCSV(new StringBuilder(), time, pop).toString();
+    }
+
+    /** Append population statistics to a CSV line
+     *  @param sb -- the line being built
+     *  @param time -- the time of the statistics
+     *  @param pop -- the population in each disease state
+     *  @return sb
+     */
+    public static StringBuilder appendCSV(
+        StringBuilder sb, double time, int[] pop
+    ) {
+        sb.append(time / Time.day);
+        for (int i = 0; i < stateCount; i++) {
+            sb.append(',');
+            sb.append(pop[i]);
+        }
+        return sb;
+    }
+
+    /** how daily reports are formatted by an AsyncOutput */
+    public static final AsyncOutput.Format csvFormat
+        = (StringBuilder sb, double t, int[] pop, Object o) ->
+            appendCSV(sb, t, pop).append('\n');
+
+    /** The header line for CSV formatted statistics
+     *  @return the column names, matching csv()
+     */
+    public static String csvHeader() {
+        StringBuilder sb = new StringBuilder("day");
+        for (DiseaseStates s: DiseaseStates.values()) {
+            sb.append(',');
+            sb.append(s.name());
+        }
+        return sb.toString();
+    }
+
+    /** Places everyone at their homes
+     *  @param sim -- the simulation whose people are placed
+     *  Only called during start of simulation
+     *  @author Andy Chen, Blake Thorson
+     */
+    public static void startAtHome(Simulation sim) {
+        for (Person p: sim.allPeople) p.locate(p.home());
+    }
+
+    /** Print out the entire population
+     *  @param sim -- the simulation whose people are printed
+     *  @param out -- the output stage to print through
+     *  This is needed only in the early stages of debugging
+     *  and obviously useless for large populations.
+     */
+    public static void printAll(Simulation sim, AsyncOutput out) {
+        for (Person p: sim.allPeople) {
+            // line 1: person id and role
+            out.publish(personFormat, 0.0, null, p);
+
+            // line 2 the home
+            out.publish(homeFormat, 0.0, null, p.home());
+
+            // lines 3 and up: each place and its schedule
+            for (int v = 0; v < p.role.visitKind.length; v++) {
+                final Place pl = p.visit(v);
+                out.publish(AsyncOutput.text, 0.0, null, " " + pl.kind.name
+                    + " " + pl.id + p.role.visitSchedule[v]
+                );
+            }
+        }
+    }
+
+    // how printAll lines are formatted by an AsyncOutput
+    private static final AsyncOutput.Format personFormat
+        = (StringBuilder sb, double t, int[] v, Object o) ->
+            sb.append(((Person) o).id).append(' ')
+              .append(((Person) o).role.name).append('\n');
+    private static final AsyncOutput.Format homeFormat
+        = (StringBuilder sb, double t, int[] v, Object o) ->
+            sb.append(' ').append(((Place) o).kind.name)
+              .append(' ').append(((Place) o).id).append('\n');
+}
+
+/** Asynchronous output, decoupling formatting and writing from simulation
+ *  Records of fixed size, a format, a time, up to width ints and a
+ *  reference, are published into a preallocated ring by a single producer
+ *  and a dedicated writer thread formats and writes them in batches.
+ *  When the ring is full the producer waits, so no output is lost.
+ *  The reference lets rare or structured output (warnings, debug dumps)
+ *  share the ring; the formatter must only read immutable fields through it.
+ */
+class AsyncOutput {
+
+    /** Functional interface for formatting records
+     *  Formats run on the writer thread; values is a scratch array that is
+     *  reused for every record.
+     */
+    public static interface Format {
+        void format(StringBuilder sb, double time, int[] values, Object o);
+    }
+
+    /** a format that outputs the reference as a line of text */
+    public static final Format text
+        = (StringBuilder sb, double t, int[] v, Object o) ->
+            sb.append(o).append('\n');
+
+    // ring of records, size a power of two
+    private static final int size = 1 << 12;
+    private final int width; // ints per record
+    private final Format[] formats = new Format[size];
+    private final double[] times = new double[size];
+    private final int[] values;
+    private final int[] counts = new int[size]; // ints used per record
+    private final Object[] refs = new Object[size];
+
+    // positions; each is written by only one of the two threads
+    private volatile long head = 0; // records published, by the producer
+    private volatile long tail = 0; // records written, by the writer
+    private volatile boolean closed = false;
+
+    private final PrintStream out;
+    private final Thread writer;
+
+    /** Start an output stage
+     *  @param o -- where the output goes
+     *  @param w -- the maximum number of ints in a record
+     */
+    public AsyncOutput(PrintStream o, int w) {
+        out = o;
+        width = w;
+        values = new int[size * w];
+        writer = new Thread(this::drain, "output");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** Wait for a consumer to make room in a ring buffer
+     *  @param spins -- how many times we have waited so far
+     *  Spins briefly, then parks, so a stalled consumer costs little.
+     */
+    static void backoff(int spins) {
+        if (spins < 100) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(10000);
+        }
+    }
+
+    /** Publish a record
+     *  @param f -- how to format it
+     *  @param time -- a time, passed to f
+     *  @param v -- ints passed to f, or null; copied, at most width used
+     *  @param o -- a reference passed to f, or null
+     *  Only one thread may publish to a given AsyncOutput at a time.
+     */
+    public void publish(Format f, double time, int[] v, Object o) {
+        for (int spins = 0; head - tail >= size; spins++) backoff(spins);
+        final long h = head;
+        final int i = (int) (h & (size - 1));
+        formats[i] = f;
+        times[i] = time;
+        refs[i] = o;
+        if (v != null) {
+            final int n = Math.min(v.length, width);
+            System.arraycopy(v, 0, values, i * width, n);
+            counts[i] = n;
+        } else {
+            counts[i] = 0;
+        }
+        head = h + 1;
+    }
+
+    /** The writer thread, runs until closed and drained
+     */
+    private void drain() {
+        final StringBuilder sb = new StringBuilder();
+        final int[] scratch = new int[width];
+        for (;;) {
+            final long h = head;
+            if (tail == h) { // nothing to write
+                if (closed && (head == h)) break;
+                out.flush();
+                LockSupport.parkNanos(100000);
+                continue;
+            }
+            for (long r = tail; r < h; r++) { // format a batch
+                final int i = (int) (r & (size - 1));
+                System.arraycopy(values, i * width, scratch, 0, counts[i]);
+                formats[i].format(sb, times[i], scratch, refs[i]);
+                refs[i] = null; // don't hold on to garbage
+            }
+            tail = h; // the producer may now reuse the batch
+            out.print(sb);
+            sb.setLength(0);
+        }
+        out.flush();
+    }
+
+    /** Finish output
+     *  Waits for the writer to write everything.
+     */
+    public void close() {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
+
+/** Who-infected-whom log, written to a compact binary file
+ *  @see Person#infect where records are made
+ *  Each record gives the time of an infection, the person infected, the
+ *  place and kind of place it happened in and the contageous people present.
+ *  Records go into preallocated ring buffers, a single simulation thread
+ *  producing and a background thread consuming them, so logging costs the
+ *  simulation only a few array stores per infection.  If the writer falls
+ *  behind, the simulation waits for it rather than losing records.
+ *
+ *  File format, all in DataOutputStream form:
+ *  <pre>
+ *    int magic, int version, int kinds, kinds x UTF kind name,
+ *    then per record: double time (seconds), int infectee, int place,
+ *    int kind, int infectors, infectors x int person
+ *  </pre>
+ *  Place and kind are -1 for infections made at startup.
+ */
+class TransmissionLog {
+    private static final int magic = 0x45504954; // "EPIT"
+    private static final int version = 1;
+
+    // ring of records, size a power of two
+    private static final int size = 1 << 12;
+    private final double[] time = new double[size];
+    private final int[] infectee = new int[size];
+    private final int[] place = new int[size];
+    private final int[] kind = new int[size];
+    private final long[] first = new long[size]; // index of first infector
+    private final int[] count = new int[size]; // number of infectors
+
+    // ring of infectors, shared by all records
+    private static final int infectorSize = 1 << 16;
+    private final int[] infectors = new int[infectorSize];
+
+    // positions; each is written by only one of the two threads
+    private volatile long head = 0; // records published, by the simulation
+    private volatile long tail = 0; // records written, by the writer
+    private volatile long infectorTail = 0; // infectors written, by writer
+    private long infectorHead = 0; // infectors stored, simulation only
+    private long slot; // the record being built, simulation only
+    private volatile boolean closed = false;
+
+    private final DataOutputStream out;
+    private final Thread writer;
+    private IOException failure = null; // first error seen by the writer
+
+    /** Open a transmission log
+     *  @param name -- the file name
+     *  @param m -- the model to be logged, for the names of place kinds
+     *  Starts the background writer.
+     */
+    public TransmissionLog(String name, Model m) {
+        DataOutputStream o = null;
+        try {
+            o = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(name), 1 << 16
+            ));
+            o.writeInt(magic);
+            o.writeInt(version);
+            o.writeInt(m.placeKinds.size());
+            for (PlaceKind pk: m.placeKinds) o.writeUTF(pk.name);
+        } catch (IOException e) {
+            Error.fatal("could not write file: " + name);
+        }
+        out = o;
+        writer = new Thread(this::drain, "transmission log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** Begin a record of an infection
+     *  @param t -- the time of the infection
+     *  @param p -- the id of the person infected
+     *  @param where -- where it happened, or null
+     *  Follow this with infector() for each contageous person present,
+     *  then commit().
+     */
+    public void begin(double t, int p, Place where) {
+        for (int spins = 0; head - tail >= size; spins++) {
+            AsyncOutput.backoff(spins);
+        }
+        slot = head;
+        final int i = (int) (slot & (size - 1));
+        time[i] = t;
+        infectee[i] = p;
+        place[i] = (where == null) ? -1 : where.id;
+        kind[i] = (where == null) ? -1 : where.kind.index;
+        first[i] = infectorHead;
+        count[i] = 0;
+    }
+
+    /** Add a possible infector to the record being built
+     *  @param p -- the id of a contageous person present
+     */
+    public void infector(int p) {
+        for (int spins = 0; infectorHead - infectorTail >= infectorSize;) {
+            if (count[(int) (slot & (size - 1))] == infectorSize) return;
+            AsyncOutput.backoff(spins++);
+        }
+        infectors[(int) (infectorHead & (infectorSize - 1))] = p;
+        infectorHead = infectorHead + 1;
+        count[(int) (slot & (size - 1))]++;
+    }
+
+    /** Publish the record being built to the writer
+     */
+    public void commit() {
+        head = slot + 1;
+    }
+
+    /** The background writer, runs until closed and drained
+     */
+    private void drain() {
+        try {
+            for (;;) {
+                final long h = head;
+                if (tail == h) { // nothing to write
+                    if (closed && (head == h)) break;
+                    out.flush();
+                    LockSupport.parkNanos(100000);
+                    continue;
+                }
+                for (long r = tail; r < h; r++) {
+                    final int i = (int) (r & (size - 1));
+                    out.writeDouble(time[i]);
+                    out.writeInt(infectee[i]);
+                    out.writeInt(place[i]);
+                    out.writeInt(kind[i]);
+                    out.writeInt(count[i]);
+                    for (long j = first[i]; j < first[i] + count[i]; j++) {
+                        out.writeInt(infectors[(int) (j & (infectorSize - 1))]);
+                    }
+                    infectorTail = first[i] + count[i];
+                    tail = r + 1;
+                }
+            }
+            out.close();
+        } catch (IOException e) {
+            failure = e;
+            tail = Long.MAX_VALUE / 2; // never block the simulation
+            infectorTail = Long.MAX_VALUE / 2;
+        }
+    }
+
+    /** Finish the log
+     *  Waits for the writer to write everything, then closes the file.
+     */
+    public void close() {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Error.warn("transmission log: interrupted while closing");
+        }
+        if (failure != null) {
+            Error.warn("transmission log: " + failure.getMessage());
+        }
+    }
+
+    /** Convert a transmission log to CSV
+     *  @param name -- the file name of the log
+     *  @param o -- where to put the CSV
+     *  Output has time in days and infectors separated by spaces.
+     */
+    public static void toCSV(String name, PrintStream o) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(name), 1 << 16
+        ))) {
+            if ((in.readInt() != magic) || (in.readInt() != version)) {
+                Error.fatal(name + ": not a transmission log");
+            }
+            final String[] kinds = new String[in.readInt()];
+            for (int k = 0; k < kinds.length; k++) kinds[k] = in.readUTF();
+
+            o.println("day,infectee,place,kind,infectors");
+            final StringBuilder sb = new StringBuilder();
+            for (;;) {
+                final double t;
+                try {
+                    t = in.readDouble();
+                } catch (EOFException e) {
+                    break; // normal end of file
+                }
+                sb.setLength(0);
+                sb.append(t / Time.day);
+                sb.append(',').append(in.readInt());
+                sb.append(',').append(in.readInt());
+                final int k = in.readInt();
+                sb.append(',').append((k < 0) ? "" : kinds[k]);
+                sb.append(',');
+                final int n = in.readInt();
+                for (int j = 0; j < n; j++) {
+                    if (j > 0) sb.append(' ');
+                    sb.append(in.readInt());
+                }
+                o.println(sb);
+            }
+        } catch (FileNotFoundException e) {
+            Error.fatal("could not open file: " + name);
+        } catch (IOException e) {
+            Error.fatal(name + ": " + e.getMessage());
+        }
+    }
+}
+
+/** Per-person state kept off the Java heap, optionally in a mapped file
+ *  @see Person, whose changing state is a view of its record here
+ *  Each person's disease state, location, home, pending infection time and
+ *  time of infection are kept in fixed-size records addressed by long
+ *  index, in direct or memory-mapped buffers that the garbage collector
+ *  never scans; the Person objects hold only what never changes.  A mapped
+ *  file shows the population as it is at the moment, and the operating
+ *  system keeps what was written if the JVM dies, but nothing marks a
+ *  consistent point: after a crash, records may be part way through a
+ *  change.
+ *
+ *  File format, big-endian:
+ *  <pre>
+ *    int magic "EPIP", int version, long count,
+ *    count x (byte state, 3 bytes padding, int location, int home,
+ *             4 bytes padding, double infection time,
+ *             double time infected),
+ *    places are -1 for none, times are NaN for none
+ *  </pre>
+ */
+class PopulationFile {
+    private static final int magic = 0x45504950; // "EPIP"
+    private static final int version = 2;
+    private static final int header = 16; // bytes before the first record
+    static final int recordSize = 32; // bytes per person
+
+    // where each field is in a record
+    private static final int stateAt = 0;
+    private static final int locationAt = 4;
+    private static final int homeAt = 8;
+    private static final int infectionAt = 16;
+    private static final int infectedAt = 24;
+
+    // records are split over buffers, which are limited to 2G bytes
+    private static final int chunkShift = 25; // 2**25 records per buffer
+    private static final long chunkMask = (1L << chunkShift) - 1;
+    private final ByteBuffer[] chunks;
+    public final long count; // the number of records
+
+    /** Create the records for a population
+     *  @param name -- the file to map, or null to use direct memory
+     *  @param n -- the number of people
+     */
+    public PopulationFile(String name, long n) {
+        count = n;
+        chunks = new ByteBuffer[(int) ((n + chunkMask) >>> chunkShift)];
+        try (FileChannel file = (name == null) ? null : FileChannel.open(
+            Paths.get(name), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING
+        )) {
+            if (file != null) {
+                final ByteBuffer h = ByteBuffer.allocate(header);
+                h.putInt(magic).putInt(version).putLong(n).flip();
+                file.write(h, 0);
+            }
+            for (int c = 0; c < chunks.length; c++) {
+                final long first = (long) c << chunkShift;
+                final int size = (int) Math.min(chunkMask + 1, n - first)
+                    * recordSize;
+                chunks[c] = (file == null)
+                    ? ByteBuffer.allocateDirect(size)
+                    : file.map(
+                        FileChannel.MapMode.READ_WRITE,
+                        header + first * recordSize, size
+                    ); // the mapping outlives the channel
+            }
+        } catch (IOException e) {
+            Error.fatal("could not map file: " + name);
+        }
+    }
+
+    // the buffer holding a record, and where the record is in it
+    private ByteBuffer chunk(long i) {
+        return chunks[(int) (i >>> chunkShift)];
+    }
+    private static int at(long i) {
+        return (int) (i & chunkMask) * recordSize;
+    }
+
+    /** Start the record of a person
+     *  @param i -- the person's index
+     *  @param state -- the disease state
+     *  They are nowhere, have no home, are due to be infected at time 0,
+     *  which a new person with no other infection scheduled ignores, and
+     *  have not been infected.
+     */
+    void create(long i, int state) {
+        final ByteBuffer b = chunk(i);
+        final int at = at(i);
+        b.put(at + stateAt, (byte) state);
+        b.putInt(at + locationAt, -1);
+        b.putInt(at + homeAt, -1);
+        b.putDouble(at + infectionAt, 0.0);
+        b.putDouble(at + infectedAt, Double.NaN);
+    }
+
+    /** @param i -- the person's index
+     *  @return their disease state
+     */
+    int state(long i) {
+        return chunk(i).get(at(i) + stateAt);
+    }
+
+    /** @param i -- the person's index
+     *  @param state -- their new disease state
+     */
+    void state(long i, int state) {
+        chunk(i).put(at(i) + stateAt, (byte) state);
+    }
+
+    /** @param i -- the person's index
+     *  @return the number of the place they are in, or -1
+     */
+    int location(long i) {
+        return chunk(i).getInt(at(i) + locationAt);
+    }
+
+    /** @param i -- the person's index
+     *  @param p -- the number of the place they are now in, or -1
+     */
+    void location(long i, int p) {
+        chunk(i).putInt(at(i) + locationAt, p);
+    }
+
+    /** @param i -- the person's index
+     *  @return the number of their home, or -1
+     */
+    int home(long i) {
+        return chunk(i).getInt(at(i) + homeAt);
+    }
+
+    /** @param i -- the person's index
+     *  @param p -- the number of their home
+     */
+    void home(long i, int p) {
+        chunk(i).putInt(at(i) + homeAt, p);
+    }
+
+    /** @param i -- the person's index
+     *  @return the time they are due to be infected, NaN if not due
+     */
+    double infection(long i) {
+        return chunk(i).getDouble(at(i) + infectionAt);
+    }
+
+    /** @param i -- the person's index
+     *  @param t -- the time they are now due to be infected, or NaN
+     */
+    void infection(long i, double t) {
+        chunk(i).putDouble(at(i) + infectionAt, t);
+    }
+
+    /** @param i -- the person's index
+     *  @return the time they were infected, NaN if not yet
+     */
+    double infected(long i) {
+        return chunk(i).getDouble(at(i) + infectedAt);
+    }
+
+    /** @param i -- the person's index
+     *  @param t -- the time they were infected
+     */
+    void infected(long i, double t) {
+        chunk(i).putDouble(at(i) + infectedAt, t);
+    }
+
+    /** Write a mapped file out to the disk
+     *  Direct memory needs nothing done.
+     */
+    public void force() {
+        for (ByteBuffer b: chunks) {
+            if (b instanceof MappedByteBuffer) ((MappedByteBuffer) b).force();
+        }
+    }
+
+    /** Convert a population file to CSV
+     *  @param name -- the file name
+     *  @param o -- where the CSV goes
+     */
+    public static void toCSV(String name, PrintStream o) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(name), 1 << 16
+        ))) {
+            if ((in.readInt() != magic) || (in.readInt() != version)) {
+                Error.fatal(name + ": not a population file");
+            }
+            final long n = in.readLong();
+            final Person.DiseaseStates[] states
+                = Person.DiseaseStates.values();
+
+            o.println("person,state,location,home,infection,infected");
+            final StringBuilder sb = new StringBuilder();
+            for (long i = 0; i < n; i++) {
+                final int state = in.readByte();
+                in.skipBytes(3);
+                sb.setLength(0);
+                sb.append(i);
+                sb.append(',').append(states[state]);
+                sb.append(',').append(in.readInt());
+                sb.append(',').append(in.readInt());
+                in.skipBytes(4);
+                for (int j = 0; j < 2; j++) {
+                    final double t = in.readDouble();
+                    sb.append(',');
+                    if (!Double.isNaN(t)) sb.append(t / Time.day);
+                }
+                o.println(sb);
+            }
+        } catch (FileNotFoundException e) {
+            Error.fatal("could not open file: " + name);
+        } catch (IOException e) {
+            Error.fatal(name + ": " + e.getMessage());
+        }
+    }
+}
+
+/** The description of a model, as read from an input file
+ *  @see epidemic#buildModel for the parser that constructs models
+ *  @see Simulation for a run of a model
+ *  Simulating a model never changes it, so one model may be shared by
+ *  any number of simulations, including simulations running concurrently.
+ */
+class Model {
+    int population = 0; // the population of the model, 0 = uninitialized
+    int infected = 0; // number initially infected, 0 = uninitialized
+    double endOfTime = 0.0; // in days, 0.0 = uninitialized
+
+    // rules describing the progress of the infection
+    InfectionRule latent = null;
+    InfectionRule asymptomatic = null;
+    InfectionRule symptomatic = null;
+    InfectionRule bedridden = null;
+
+    // the categories of places and the roles people play, in input order
+    final ArrayList < PlaceKind > placeKinds = new ArrayList < > ();
+    final ArrayList < Role > roles = new ArrayList < > ();
+    double roleSum = 0.0; // sum of the fractions of all the roles
+    final ArrayList < Intervention > interventions = new ArrayList < > ();
+
+    // how the model is run, set by whoever runs it rather than the file
+    boolean commonRandom = false; // do replicates split their streams?
+    boolean locality = false; // renumber elaborations for locality?
+
+    /** Find a category of place, by name
+     *  @param n -- the name of the category
+     *  @return the PlaceKind with that name, or null if none has been defined
+     */
+    public PlaceKind findPlaceKind(String n) {
+        for (PlaceKind pk: placeKinds) {
+            if (pk.name.equals(n)) return pk;
+        }
+        return null; // category not found
+    }
+
+    /** Find a role, by name
+     *  @param n -- the name of the role
+     *  @return the role with that name, or null if none has been defined
+     */
+    public Role findRole(String n) {
+        for (Role r: roles) {
+            if (r.name.equals(n)) return r;
+        }
+        return null; // role not found
+    }
+
+    /** Check that all required fields are filled in
+     *  Each missing field is a warning.
+     */
+    void checkComplete() {
+        if (population == 0) Error.warn("population not given");
+        if (latent == null) Error.warn("latency time not given");
+        if (asymptomatic == null) Error.warn("asymptomatic time not given");
+        if (symptomatic == null) Error.warn("symptomatic time not given");
+        if (bedridden == null) Error.warn("bedridden time not given");
+        if (endOfTime == 0.0) Error.warn("end of time not given");
+        if (roles.isEmpty()) Error.warn("no roles given");
+    }
+
+    /** convert a model back to textual form
+     *  @return the model as a model file, in a fixed order and layout
+     *  Models that simulate the same give the same text.
+     */
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("population ").append(population).append(";\n");
+        sb.append("infected ").append(infected).append(";\n");
+        sb.append("end ").append(endOfTime).append(";\n");
+        sb.append("latent ").append(latent).append(";\n");
+        sb.append("asymptomatic ").append(asymptomatic).append(";\n");
+        sb.append("symptomatic ").append(symptomatic).append(";\n");
+        sb.append("bedridden ").append(bedridden).append(";\n");
+        for (PlaceKind pk: placeKinds) sb.append(pk).append('\n');
+        for (Role r: roles) sb.append(r).append('\n');
+        for (Intervention i: interventions) sb.append(i).append('\n');
+        return sb.toString();
+    }
+
+    /** Make a copy of this model that can be changed without affecting it
+     *  @return the copy
+     *  Infection rules and schedules are never changed, so they are shared.
+     */
+    public Model copy() {
+        Model m = new Model();
+        m.population = population;
+        m.infected = infected;
+        m.endOfTime = endOfTime;
+        m.latent = latent;
+        m.asymptomatic = asymptomatic;
+        m.symptomatic = symptomatic;
+        m.bedridden = bedridden;
+        for (PlaceKind pk: placeKinds) new PlaceKind(pk, m);
+        for (Role r: roles) new Role(r, m);
+        m.roleSum = roleSum;
+        for (Intervention i: interventions) new Intervention(i, m);
+        m.commonRandom = commonRandom;
+        m.locality = locality;
+        return m;
+    }
+
+    /** Change one field of this model
+     *  @param target -- a place name, a disease state, or infected
+     *  @param field -- the field of that target, ignored for infected
+     *  @param value -- the new value, in the units used in model files
+     *  @return false if there is no such target or field
+     *  Only use this on a copy of a model that is not being simulated.
+     */
+    public boolean set(String target, String field, double value) {
+        final MyScanner.Message context = () -> target + " " + field;
+        if ("infected".equals(target)) {
+            infected = (int) Math.round(value);
+            return true;
+        }
+
+        InfectionRule r = null; // the changed rule, null if no such field
+        if ("latent".equals(target)) {
+            r = latent.with(field, value, context);
+            if (r != null) latent = r;
+        } else if ("asymptomatic".equals(target)) {
+            r = asymptomatic.with(field, value, context);
+            if (r != null) asymptomatic = r;
+        } else if ("symptomatic".equals(target)) {
+            r = symptomatic.with(field, value, context);
+            if (r != null) symptomatic = r;
+        } else if ("bedridden".equals(target)) {
+            r = bedridden.with(field, value, context);
+            if (r != null) bedridden = r;
+        } else { // it had better be a place
+            PlaceKind pk = findPlaceKind(target);
+            return (pk != null) && pk.set(field, value);
+        }
+        return r != null;
+    }
+}
+
+/** Construction of models by program, for embedding the simulator
+ *  @see epidemic#buildModel for the equivalent model file statements
+ *  Each method matches one statement of a model file and the values get
+ *  the same checks, but all problems are reported together by build(),
+ *  which throws an Error.Failure rather than terminating the program.
+ *  For example, with times in hours and durations in days:
+ *  <pre>
+ *  Model m = new ModelBuilder().population(1000).infected(1).end(90)
+ *      .latent(2, 1, 0).asymptomatic(1, 1, 0.5)
+ *      .symptomatic(4, 1, 0.3).bedridden(7, 2, 0.9)
+ *      .place("home", 3, 2, 0.04).place("work", 20, 10, 0.01)
+ *      .role("worker", 0.7).at("home").at("work", 9, 17)
+ *      .role("child", 0.3).at("home")
+ *      .close("work", 30).build();
+ *  new Simulation(m, new MyRandom(1), reporter).run();
+ *  </pre>
+ *  A builder may be used for only one model.
+ */
+class ModelBuilder {
+    // the statements of the model, carried out in order by build()
+    private final ArrayList < Consumer < Model > > steps = new ArrayList < > ();
+
+    // the role being described, made once all of its places are known
+    private String role = null;
+    private double fraction;
+    private ArrayList < String > places;
+    private ArrayList < double[] > hours; // null for home
+
+    /** Set the population, as with population n;
+     *  @param n -- the number of people
+     *  @return this builder
+     */
+    public ModelBuilder population(int n) {
+        steps.add((Model m) -> {
+            if (n <= 0) Error.warn("population " + n + ": not positive?");
+            m.population = n;
+        });
+        return this;
+    }
+
+    /** Set the number initially infected, as with infected n;
+     *  @param n -- the number of people
+     *  @return this builder
+     */
+    public ModelBuilder infected(int n) {
+        steps.add((Model m) -> {
+            if (n < 0) Error.warn("infected " + n + ": negative?");
+            m.infected = n;
+        });
+        return this;
+    }
+
+    /** Set the end of time, as with end t;
+     *  @param days -- how long to simulate
+     *  @return this builder
+     */
+    public ModelBuilder end(double days) {
+        steps.add((Model m) -> m.endOfTime = Check.positive(days, 0.0F,
+            () -> "end " + days + ": negative end time?"
+        ));
+        return this;
+    }
+
+    /** Set the latent period, as with latent median scatter recovery;
+     *  @param median -- the median, in days
+     *  @param scatter -- the scatter, in days
+     *  @param r -- the probability of recovery at its end
+     *  @return this builder
+     */
+    public ModelBuilder latent(double median, double scatter, double r) {
+        steps.add((Model m) ->
+            m.latent = InfectionRule.of(median, scatter, r, () -> "latent")
+        );
+        return this;
+    }
+
+    /** Set the asymptomatic period, like latent
+     *  @see #latent
+     */
+    public ModelBuilder asymptomatic(double median, double scatter, double r) {
+        steps.add((Model m) -> m.asymptomatic = InfectionRule.of(
+            median, scatter, r, () -> "asymptomatic"
+        ));
+        return this;
+    }
+
+    /** Set the symptomatic period, like latent
+     *  @see #latent
+     */
+    public ModelBuilder symptomatic(double median, double scatter, double r) {
+        steps.add((Model m) -> m.symptomatic = InfectionRule.of(
+            median, scatter, r, () -> "symptomatic"
+        ));
+        return this;
+    }
+
+    /** Set the bedridden period, like latent
+     *  @see #latent
+     */
+    public ModelBuilder bedridden(double median, double scatter, double r) {
+        steps.add((Model m) -> m.bedridden = InfectionRule.of(
+            median, scatter, r, () -> "bedridden"
+        ));
+        return this;
+    }
+
+    /** Add a kind of place, as with place name median scatter transmissivity;
+     *  @param name -- the name of the kind
+     *  @param median -- the median number of people in each place
+     *  @param scatter -- the scatter in the number of people
+     *  @param t -- the transmissivity, per hour
+     *  @return this builder
+     */
+    public ModelBuilder place(
+        String name, double median, double scatter, double t
+    ) {
+        steps.add((Model m) -> new PlaceKind(m, name, median, scatter, t));
+        return this;
+    }
+
+    /** Begin a role, as with role name fraction ...;
+     *  @param name -- the name of the role
+     *  @param f -- the number or fraction of the population in it
+     *  @return this builder
+     *  The places of the role are given by calls to at() that follow.
+     */
+    public ModelBuilder role(String name, double f) {
+        endRole();
+        role = name;
+        fraction = f;
+        places = new ArrayList < > ();
+        hours = new ArrayList < > ();
+        return this;
+    }
+
+    /** Give the current role its home
+     *  @param kind -- the name of the kind of place
+     *  @return this builder
+     */
+    public ModelBuilder at(String kind) {
+        return at(kind, null);
+    }
+
+    /** Give the current role a place it visits daily
+     *  @param kind -- the name of the kind of place
+     *  @param start -- when visits begin, in hours from midnight
+     *  @param end -- when visits end, in hours from midnight
+     *  @return this builder
+     */
+    public ModelBuilder at(String kind, double start, double end) {
+        return at(kind, new double[] { start, end });
+    }
+
+    // add a place to the current role, hours is null for home
+    private ModelBuilder at(String kind, double[] h) {
+        if (role == null) {
+            steps.add((Model m) -> Error.warn(kind + ": not in a role?"));
+        } else {
+            places.add(kind);
+            hours.add(h);
+        }
+        return this;
+    }
+
+    // make the current role, if there is one
+    private void endRole() {
+        if (role == null) return;
+        final String n = role;
+        final double f = fraction;
+        final ArrayList < String > ps = places;
+        final ArrayList < double[] > hs = hours;
+        steps.add((Model m) -> {
+            final ArrayList < Schedule > ss = new ArrayList < > ();
+            for (int i = 0; i < ps.size(); i++) {
+                final double[] h = hs.get(i);
+                final String p = ps.get(i);
+                ss.add((h == null) ? null :
+                    new Schedule(h[0], h[1], () -> "role " + n + " " + p)
+                );
+            }
+            new Role(m, n, f, ps, ss);
+        });
+        role = null;
+    }
+
+    /** Close every place of a kind, as with close name day;
+     *  @param kind -- the name of the kind of place
+     *  @param day -- the day, from the start, it takes effect
+     *  @return this builder
+     */
+    public ModelBuilder close(String kind, double day) {
+        endRole();
+        steps.add((Model m) -> new Intervention(m, kind, day, false));
+        return this;
+    }
+
+    /** Reopen every place of a kind, as with open name day;
+     *  @see #close
+     */
+    public ModelBuilder open(String kind, double day) {
+        endRole();
+        steps.add((Model m) -> new Intervention(m, kind, day, true));
+        return this;
+    }
+
+    /** Make the model
+     *  @return the model, ready to simulate
+     *  @throws Error.Failure listing the problems, if there are any
+     */
+    public Model build() {
+        endRole();
+        final boolean collecting = Error.collecting();
+        if (!collecting) Error.collect(true);
+        try {
+            final Model m = new Model();
+            for (Consumer < Model > step: steps) step.accept(m);
+            m.checkComplete();
+            Error.exitIfWarnings("Aborted due to errors in model");
+            return m;
+        } finally {
+            if (!collecting) Error.collect(false);
+        }
+    }
+}
+
+/** One run of a model
+ *  @see Model for the description being simulated
+ *  All of the state that changes as the simulation progresses belongs to
+ *  a Simulation, either directly or through the people and places it
+ *  creates, so independent simulations may run on separate threads.
+ */
+class Simulation {
+
+    /** Functional interface for receiving daily population statistics
+     *  The array passed is live, copy it if it must be kept.
+     *  It begins with the population by disease state, followed by the
+     *  breakdown described under popByState below.
+     */
+    public static interface Reporter {
+        void report(double time, int[] popByState);
+    }
+
+    /** Interface for observing a simulation as it runs
+     *  Each method does nothing unless overridden, so a listener need only
+     *  override what it watches.  Listeners are called on the simulation's
+     *  thread, in the order they were added, and must not change it.
+     *  Ghosts of people simulated elsewhere are not reported.
+     *  @see Simulation#listen
+     */
+    public static interface Listener {
+
+        /** A person changed disease state
+         *  @param time -- the time of the change
+         *  @param p -- the person
+         *  @param from -- the state they left
+         *  @param to -- the state they are now in
+         */
+        default void stateChanged(
+            double time, Person p,
+            Person.DiseaseStates from, Person.DiseaseStates to
+        ) {}
+
+        /** A person moved from one place to another
+         *  @param time -- the time of the move
+         *  @param p -- the person
+         *  @param from -- the place they left
+         *  @param to -- the place they are now in
+         */
+        default void moved(double time, Person p, Place from, Place to) {}
+
+        /** A person was infected
+         *  @param time -- the time of infection
+         *  @param p -- the person, already latent
+         *  @param where -- the place, null if infected from the start
+         */
+        default void infected(double time, Person p, Place where) {}
+
+        /** A day begins
+         *  @param time -- the time of midnight
+         *  @param day -- the number of the day, 0 for the first
+         */
+        default void day(double time, int day) {}
+    }
+
+    /** Several listeners, called in turn as if they were one
+     *  Only made once a second listener is added.
+     */
+    private static final class Listeners implements Listener {
+        private Listener[] all;
+
+        Listeners(Listener a, Listener b) {
+            all = new Listener[] { a, b };
+        }
+
+        void add(Listener l) {
+            all = Arrays.copyOf(all, all.length + 1);
+            all[all.length - 1] = l;
+        }
+
+        public void stateChanged(
+            double time, Person p,
+            Person.DiseaseStates from, Person.DiseaseStates to
+        ) {
+            for (Listener l: all) l.stateChanged(time, p, from, to);
+        }
+
+        public void moved(double time, Person p, Place from, Place to) {
+            for (Listener l: all) l.moved(time, p, from, to);
+        }
+
+        public void infected(double time, Person p, Place where) {
+            for (Listener l: all) l.infected(time, p, where);
+        }
+
+        public void day(double time, int day) {
+            for (Listener l: all) l.day(time, day);
+        }
+    }
+
+    /** the simple reporter, prints CSV to System.out */
+    public static final Reporter printer
+        = (double t, int[] pop) -> System.out.println(Person.csv(t, pop));
+
+    /** a reporter that prints CSV through an output stage
+     *  @param out -- the output stage
+     *  @return the reporter
+     */
+    public static Reporter printer(AsyncOutput out) {
+        return (double t, int[] pop)
+            -> out.publish(Person.csvFormat, t, pop, null);
+    }
+
+    /** a reporter that prints the full breakdown through an output stage
+     *  @param out -- the output stage, at least breakdownSize(m) wide
+     *  @return the reporter
+     *  @see breakdownHeader for the columns
+     */
+    public static Reporter breakdownPrinter(AsyncOutput out) {
+        return (double t, int[] pop)
+            -> out.publish(breakdownFormat, t, pop, null);
+    }
+
+    /** how breakdown reports are formatted by an AsyncOutput */
+    static final AsyncOutput.Format breakdownFormat
+        = (StringBuilder sb, double t, int[] v, Object o) -> {
+            sb.append(t / Time.day);
+            for (int i = 0; i < v.length; i++) sb.append(',').append(v[i]);
+            sb.append('\n');
+        };
+
+    /** The size of the statistics array for a model
+     *  @param m -- the model
+     *  @return the number of counters, see popByState
+     */
+    public static int breakdownSize(Model m) {
+        return Person.stateCount * (1 + m.roles.size())
+            + 2 * m.placeKinds.size();
+    }
+
+    /** The CSV header for breakdown reports
+     *  @param m -- the model
+     *  @return the column names
+     */
+    public static String breakdownHeader(Model m) {
+        final StringBuilder sb = new StringBuilder(Person.csvHeader());
+        for (Role r: m.roles) {
+            for (Person.DiseaseStates s: Person.DiseaseStates.values()) {
+                sb.append(',').append(r.name).append('.').append(s.name());
+            }
+        }
+        for (PlaceKind pk: m.placeKinds) {
+            sb.append(',').append(pk.name).append(".occupants");
+        }
+        for (PlaceKind pk: m.placeKinds) {
+            sb.append(',').append(pk.name).append(".contageous");
+        }
+        return sb.toString();
+    }
+
+    public final Model model; // the model being simulated
+    final Topology topology; // the people and places of the model
+    public final MyRandom rand; // the random stream for this simulation
+    private final MyRandom substream; // reseeded per draw, null if unsplit
+    private final int[] exposures; // by person, delays drawn if split
+    final Reporter reporter; // where the daily statistics go
+    final TransmissionLog translog; // where infections are logged, or null
+    final Partition partition; // the part simulated here, null if all
+    final PopulationFile population; // where people's state is kept
+    Durations durations = null; // histograms of durations, null if none
+    Listener listener = null; // who observes the simulation, null if none
+
+    // the state of the simulation
+    private final Simulator simulator = new Simulator();
+    final int[] generation; // by place kind, changed by closing or opening
+    private final boolean[] closed; // by place kind, is it closed?
+    final ArrayList < Person > allPeople;
+    private final Place[] places; // by number, null until needed
+    private int days = 0; // days whose moves have been scheduled
+    double reportInterval = Time.day; // time from one report to the next
+
+    // statistics, kept current as people change state and move;
+    // first the population by disease state, then by role and disease
+    // state, then occupants of each kind of place, then contageous people
+    // in each kind of place; the bases give where each part begins
+    final int[] popByState;
+    final int roleBase;
+    final int occupantBase;
+    final int contageousBase;
+
+    /** Elaborate a model, creating its people and places
+     *  @param m -- the model to simulate
+     *  @param r -- the random stream to draw from
+     *  @param rep -- the reporter for daily statistics
+     *  After construction, the simulation is ready to run.
+     */
+    public Simulation(Model m, MyRandom r, Reporter rep) {
+        this(m, r, rep, null);
+    }
+
+    /** Elaborate a model, logging infections
+     *  @param m -- the model to simulate
+     *  @param r -- the random stream to draw from
+     *  @param rep -- the reporter for daily statistics
+     *  @param log -- the transmission log, or null for none
+     */
+    public Simulation(
+        Model m, MyRandom r, Reporter rep, TransmissionLog log
+    ) {
+        this(new Topology(m, r), r, rep, log, null);
+    }
+
+    /** Create the people and places of an elaborated model
+     *  @param top -- the topology of the model
+     *  @param r -- the random stream to draw from
+     *  @param rep -- the reporter for daily statistics
+     *  @param log -- the transmission log, or null for none
+     *  @param part -- the partition to simulate, or null for all of it
+     *  Only the places in the partition, and the people whose homes are
+     *  in it, are created.
+     */
+    public Simulation(
+        Topology top, MyRandom r, Reporter rep, TransmissionLog log,
+        Partition part
+    ) {
+        this(top, r, rep, log, part, new PopulationFile(null, top.people));
+    }
+
+    /** Create the people and places of an elaborated model
+     *  @param top -- the topology of the model
+     *  @param r -- the random stream to draw from
+     *  @param rep -- the reporter for daily statistics
+     *  @param log -- the transmission log, or null for none
+     *  @param part -- the partition to simulate, or null for all of it
+     *  @param pop -- where to keep people's state, for top.people people
+     */
+    public Simulation(
+        Topology top, MyRandom r, Reporter rep, TransmissionLog log,
+        Partition part, PopulationFile pop
+    ) {
+        final Model m = top.model;
+        model = m;
+        topology = top;
+        rand = r;
+        substream = r.split() ? new MyRandom(0) : null;
+        exposures = r.split() ? new int[top.people] : null;
+        reporter = rep;
+        translog = log;
+        partition = part;
+        population = pop;
+
+        generation = new int[m.placeKinds.size()];
+        closed = new boolean[m.placeKinds.size()];
+        popByState = new int[breakdownSize(m)];
+        roleBase = Person.stateCount;
+        occupantBase = roleBase + Person.stateCount * m.roles.size();
+        contageousBase = occupantBase + m.placeKinds.size();
+
+        schedule( // schedule the end of time, after all else due then
+            m.endOfTime * Time.day,
+            (double t) -> schedule(t, (double u) -> simulator.stop())
+        );
+
+        // create our places, then our people, who link to the places
+        places = new Place[top.places];
+        allPeople = new ArrayList < > (
+            (partition == null) ? top.people : 0
+        );
+        for (int i = 0; i < top.places; i++) {
+            if (owns(i)) {
+                places[i] = m.placeKinds.get(top.kindOf[i]).newPlace(this, i);
+            }
+        }
+        for (int i = 0; i < top.people; i++) {
+            if (owns(top.home(i))) {
+                m.roles.get(top.role[i]).instantiate(this, i);
+            }
+        }
+        if (partition != null) partition.attach(this);
+
+        // Schedule the first of the daily reports to be printed
+        schedule(0.0, (double t) -> Person.report(this, t));
+
+        // Start everyone at their home and schedule their first day
+        Person.startAtHome(this);
+        scheduleActivities(0);
+        for (Intervention i: m.interventions) i.schedule(this);
+    }
+
+    /** Close every place of a kind
+     *  @param k -- the kind of place
+     *  This is a schedulable event service routine.  Pending visits are
+     *  cancelled all at once; people already there leave as scheduled.
+     */
+    void close(PlaceKind k) {
+        if (!closed[k.index]) {
+            closed[k.index] = true;
+            generation[k.index]++;
+        }
+    }
+
+    /** Reopen every place of a kind
+     *  @param time -- the time they reopen
+     *  @param k -- the kind of place
+     *  This is a schedulable event service routine.  Everyone who visits
+     *  places of the kind has their remaining visits scheduled again.
+     */
+    void reopen(double time, PlaceKind k) {
+        if (closed[k.index]) {
+            closed[k.index] = false;
+            generation[k.index]++;
+            for (Person p: allPeople) p.scheduleVisits(time, k);
+        }
+    }
+
+    /** Add a listener, to observe the simulation as it runs
+     *  @param l -- the listener
+     *  Add listeners before running; they are told of days from the first.
+     *  With no listener added, each place the simulation would tell one
+     *  costs a test of a null field, and nothing else.
+     */
+    public void listen(Listener l) {
+        if (listener == null) {
+            listener = l;
+            scheduleDay(0.0, 0);
+        } else if (listener instanceof Listeners) {
+            ((Listeners) listener).add(l);
+        } else {
+            listener = new Listeners(listener, l);
+        }
+    }
+
+    /** Schedule telling the listeners a day begins
+     *  @param time -- the time of midnight
+     *  @param d -- the number of the day
+     *  Each day schedules the next, up to the end of time.
+     */
+    private void scheduleDay(double time, int d) {
+        schedule(time, (double t) -> {
+            listener.day(t, d);
+            if (d + 1 < model.endOfTime) scheduleDay(t + Time.day, d + 1);
+        });
+    }
+
+    /** Schedule an event to occur at a future time
+     *  @param t, the time of the event
+     *  @param a, what to do for that event
+     *  @see Simulator#schedule
+     */
+    public void schedule(double t, Simulator.Action a) {
+        simulator.schedule(t, a);
+    }
+
+    /** Schedule an event that can be cancelled in bulk
+     *  @param t, the time of the event
+     *  @param g, an array of generation counters
+     *  @param i, the counter for this event
+     *  @param a, what to do for that event
+     *  @see Simulator#schedule
+     */
+    public void schedule(double t, int[] g, int i, Simulator.Action a) {
+        simulator.schedule(t, g, i, a);
+    }
+
+    /** Run the simulation to the end of time
+     */
+    public void run() {
+        simulator.run();
+    }
+
+    /** Run the simulation up to a given time
+     *  @param until -- events at or before this time are run
+     */
+    public void run(double until) {
+        simulator.run(until);
+    }
+
+    /** Run the simulation for some days from the start
+     *  @param days -- events up to this many days from the start are run
+     *  Repeated steps with increasing days let a program look at, or
+     *  change, the simulation between days; the reporter is called as
+     *  the simulation passes each reporting time.
+     */
+    public void step(double days) {
+        simulator.run(days * Time.day);
+    }
+
+    /** How much work has been done
+     *  @return the number of events done so far
+     *  Events scheduled but not yet due, such as the moves scheduled when
+     *  the simulation is built, are not counted until they are done.
+     */
+    public long events() {
+        return simulator.done();
+    }
+
+    /** The random stream to draw from for one person
+     *  @param person -- the number of the person
+     *  @param s -- uninfected for a delay until they are infected, else
+     *  the disease state they are entering
+     *  @return rand, unless it is split; then the substream of rand for
+     *  this draw.  A person enters each state once, but may have many
+     *  delays drawn; each of those has a substream of its own too.
+     *  So runs of two scenarios from split streams with the same seed make
+     *  the same draws for a person for as long as that person's history is
+     *  the same in both, whatever happens to everyone else.
+     */
+    MyRandom rand(int person, Person.DiseaseStates s) {
+        if (substream == null) return rand;
+        final int n = (s == Person.DiseaseStates.uninfected)
+            ? exposures[person]++ : 0;
+        return substream.substream(rand, person, s.ordinal(), n);
+    }
+
+    /** Is a place simulated here?
+     *  @param i -- the number of the place
+     *  @return true unless it belongs to another partition
+     */
+    boolean owns(int i) {
+        return (partition == null) || partition.owns(i);
+    }
+
+    /** Find a place by number
+     *  @param i -- the number of the place
+     *  @return the place, which stands in for it if it is elsewhere
+     */
+    Place place(int i) {
+        if (places[i] == null) { // it's in another partition
+            places[i] = new RemotePlace(
+                this, i, model.placeKinds.get(topology.kindOf[i])
+            );
+        }
+        return places[i];
+    }
+
+    /** Schedule everyone's activities throughout a day
+     *  @author Andy Chen, Blake Thorson
+     *  @param d the day
+     *  Each day schedules the next at its midnight, up to the end of time,
+     *  so the event set holds about one day of moves, not all of them.
+     */
+    private void scheduleActivities(int d) {
+        for (Person p: allPeople) p.dailySchedule(d);
+        days = d + 1;
+        if (d + 1 < model.endOfTime) {
+            schedule((d + 1) * Time.day,
+                (double t) -> scheduleActivities(d + 1)
+            );
+        }
+    }
+
+    /** How far ahead are people's moves scheduled?
+     *  @return the number of days, from day 0, whose moves are scheduled
+     */
+    int daysScheduled() {
+        return days;
+    }
+
+    /** Is a kind of place closed?
+     *  @param k -- the index of the kind of place
+     *  @return true if it is closed now
+     */
+    boolean isClosed(int k) {
+        return closed[k];
+    }
+}
+
+/** Parameter sweeps, running a model over a grid of field values
+ *  @see Model#set for the fields that may be varied
+ *  The base model is read once; each configuration simulates a copy of it
+ *  with some fields changed.  Configurations run on a pool of worker threads
+ *  and their daily reports are collected into one CSV on System.out, each
+ *  line keyed by the configuration number, the replicate number and the
+ *  values of the varied fields.
+ *
+ *  A sweep specification is read from its own file:
+ *  <pre>
+ *    list target field value ... ;  -- the field takes each listed value
+ *    range target field low high n; -- the field takes n values, low to high
+ *    latin n;                       -- n latin hypercube points, not a grid
+ *    replicates n;                  -- runs per configuration, default 1
+ *    seed n;                        -- seed of replicate 0, default 1
+ *    threads n;                     -- worker threads, default one per cpu
+ *  </pre>
+ *  The target is a place name, a disease state (latent, asymptomatic,
+ *  symptomatic, bedridden) or infected, which has no field.
+ *  Replicate r of every configuration uses seed+r, so configurations are
+ *  compared under the same random streams.  Those soon drift apart once
+ *  the runs differ, unless the model asks for common random numbers,
+ *  see Cache#simulate.
+ */
+class Sweep {
+
+    // one varied field and the values it takes
+    private static class Dimension {
+        public final String target; // what is varied
+        public final String field; // what field of target, null if none
+        public final double[] values; // listed values, or low and high
+        public final boolean range; // are values a range?
+        public final int count; // number of values in a grid
+
+        public Dimension(
+            String t, String f, double[] v, boolean r, int n
+        ) {
+            target = t;
+            field = f;
+            values = v;
+            range = r;
+            count = n;
+        }
+
+        /** the i'th grid value of this dimension
+         *  @param i -- which value, from 0 to count-1
+         *  @return the value
+         */
+        public double value(int i) {
+            if (!range) return values[i];
+            if (count == 1) return values[0];
+            return values[0] + ((values[1] - values[0]) * i) / (count - 1);
+        }
+
+        /** a value of this dimension by fraction of its extent
+         *  @param u -- the fraction, 0 <= u < 1
+         *  @return the value
+         */
+        public double sample(double u) {
+            if (!range) return values[(int) (u * values.length)];
+            return values[0] + (values[1] - values[0]) * u;
+        }
+
+        /** the name of this dimension
+         *  @return target and field, as used for CSV column names
+         */
+        public String toString() {
+            if (field == null) return target;
+            return target + "." + field;
+        }
+    }
+
+    // the sweep specification
+    private final Model base; // the model being swept
+    private final ArrayList < Dimension > dimensions = new ArrayList < > ();
+    private int latin = 0; // number of latin hypercube points, 0 = grid
+    private int replicates = 1; // runs per configuration
+    private int seed = 1; // seed for replicate 0
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /** Read a sweep specification
+     *  @param in -- the input stream
+     *  @param m -- the base model
+     */
+    private Sweep(MyScanner in , Model m) {
+        base = m;
+        while ( in .hasNext()) {
+            String keyword = in .getNextName("???", () -> "keyword expected");
+            if ("list".equals(keyword) || "range".equals(keyword)) {
+                dimension( in , "range".equals(keyword));
+            } else if ("latin".equals(keyword)) {
+                latin = Check.posIntSemicolon( in , () -> "latin");
+            } else if ("replicates".equals(keyword)) {
+                replicates = Check.posIntSemicolon( in , () -> "replicates");
+            } else if ("seed".equals(keyword)) {
+                seed = Check.posIntSemicolon( in , () -> "seed");
+            } else if ("threads".equals(keyword)) {
+                threads = Check.posIntSemicolon( in , () -> "threads");
+            } else if (keyword == "???") { // there was no keyword
+                // == is allowed here 'cause we're detecting the default value
+                if ( in .hasNext()) in .next();
+            } else { // none of the above
+                Error.warn("sweep: not a keyword: " + keyword);
+            }
+        }
+        if (dimensions.isEmpty()) Error.warn("sweep: nothing to vary");
+    }
+
+    /** Read one dimension of a sweep specification
+     *  @param in -- the input stream
+     *  @param range -- true for range, false for list
+     *  The keyword must just have been scanned from the input stream
+     */
+    private void dimension(MyScanner in , boolean range) {
+        final String kw = range ? "range" : "list";
+        final String target = in .getNextName("???",
+            () -> "sweep " + kw + ": target expected"
+        );
+        final String field = "infected".equals(target) ? null : in
+            .getNextName("???",
+                () -> "sweep " + kw + " " + target + ": field expected"
+            );
+        final String context = "sweep " + kw + " " + target + " " + field;
+
+        // collect values up to the semicolon
+        LinkedList < Double > v = new LinkedList < > ();
+        boolean hasNext = in .hasNext(); // needed for missing semicolon
+        while (hasNext && ! in .tryNextLiteral(MyScanner.semicolon)) {
+            v.add( in .getNextFloat(0.0, () -> context + ": value expected"));
+            hasNext = in .hasNext();
+        }
+        if (!hasNext) Error.warn(context + ": missing semicolon?");
+
+        double[] values = new double[v.size()];
+        int i = 0;
+        for (double d: v) values[i++] = d;
+
+        int count = values.length;
+        if (range) {
+            if (values.length != 3) {
+                Error.warn(context + ": low high count expected");
+                return;
+            }
+            count = (int) values[2];
+            if (count <= 0) Error.warn(context + ": count not positive");
+        } else if (values.length == 0) {
+            Error.warn(context + ": no values?");
+            return;
+        }
+
+        // make sure the field exists before running anything
+        if (!base.copy().set(target, field, values[0])) {
+            Error.warn(context + ": no such field");
+        }
+        dimensions.add(new Dimension(target, field, values, range, count));
+    }
+
+    /** Enumerate the configurations of this sweep
+     *  @return for each configuration, the value of each dimension
+     */
+    private ArrayList < double[] > configurations() {
+        final ArrayList < double[] > configs = new ArrayList < > ();
+        final int d = dimensions.size();
+
+        if (latin > 0) { // stratify each dimension, pair strata at random
+            final MyRandom rand = new MyRandom(seed);
+            for (int p = 0; p < latin; p++) configs.add(new double[d]);
+            for (int i = 0; i < d; i++) {
+                ArrayList < Integer > strata = new ArrayList < > ();
+                for (int p = 0; p < latin; p++) strata.add(p);
+                Collections.shuffle(strata, rand);
+                for (int p = 0; p < latin; p++) {
+                    double u = (strata.get(p) + rand.nextDouble()) / latin;
+                    configs.get(p)[i] = dimensions.get(i).sample(u);
+                }
+            }
+        } else { // the cartesian product, last dimension varies fastest
+            int[] at = new int[d];
+            boolean done = false;
+            while (!done) {
+                double[] c = new double[d];
+                for (int i = 0; i < d; i++) {
+                    c[i] = dimensions.get(i).value(at[i]);
+                }
+                configs.add(c);
+
+                // advance to the next grid point, odometer style
+                done = true;
+                for (int i = d - 1; done && (i >= 0); i--) {
+                    at[i] = at[i] + 1;
+                    if (at[i] < dimensions.get(i).count) {
+                        done = false;
+                    } else {
+                        at[i] = 0;
+                    }
+                }
+            }
+        }
+        return configs;
+    }
+
+    /** Simulate one configuration
+     *  @param c -- the configuration number
+     *  @param values -- the value of each dimension
+     *  @param r -- the replicate number
+     *  @return the daily reports, as CSV lines keyed by configuration
+     */
+    private String simulate(int c, double[] values, int r) {
+        final Model m = base.copy();
+        final StringBuilder key = new StringBuilder();
+        key.append(c).append(',').append(r);
+        for (int i = 0; i < values.length; i++) {
+            Dimension dim = dimensions.get(i);
+            m.set(dim.target, dim.field, values[i]);
+            key.append(',').append(values[i]);
+        }
+
+        final StringBuilder out = new StringBuilder();
+        Cache.simulate(m, seed, r,
+            (double t, int[] pop) -> out.append(key).append(',')
+                .append(Person.csv(t, pop)).append('\n')
+        );
+        return out.toString();
+    }
+
+    /** Run a parameter sweep
+     *  @param m -- the base model
+     *  @param name -- the name of the file holding the sweep specification
+     */
+    public static void run(Model m, String name) {
+        final Sweep sw;
+        try {
+            sw = new Sweep(new MyScanner(new File(name)), m);
+        } catch (FileNotFoundException e) {
+            Error.fatal("could not open file: " + name);
+            return; // never happens, fatal does not return
+        }
+        Error.exitIfWarnings("Aborted due to errors in sweep");
+
+        // the CSV header
+        System.out.print("config,replicate");
+        for (Dimension dim: sw.dimensions) System.out.print("," + dim);
+        System.out.println("," + Person.csvHeader());
+
+        // farm out the runs, then output them in order as they finish
+        final ExecutorService pool = Executors.newFixedThreadPool(sw.threads);
+        final LinkedList < Future < String >> runs = new LinkedList < > ();
+        final ArrayList < double[] > configs = sw.configurations();
+        for (int c = 0; c < configs.size(); c++) {
+            for (int r = 0; r < sw.replicates; r++) {
+                final int config = c;
+                final int replicate = r;
+                runs.add(pool.submit(
+                    () -> sw.simulate(config, configs.get(config), replicate)
+                ));
+            }
+        }
+        pool.shutdown();
+        try {
+            while (!runs.isEmpty()) System.out.print(runs.removeFirst().get());
+        } catch (InterruptedException | ExecutionException e) {
+            Error.fatal("sweep failed: " + e);
+        }
+    }
+}
+
+/** Streaming estimate of one quantile, by the P-square algorithm
+ *  @see Summary
+ *  Jain and Chlamtac's algorithm keeps five markers whose heights track
+ *  the minimum, the p/2, p and (1+p)/2 quantiles and the maximum, adjusting
+ *  them by piecewise-parabolic interpolation as each value arrives.
+ *  Memory is fixed no matter how many values are added.
+ */
+class QuantileSketch {
+    private final double p; // the quantile being estimated
+    private final double[] height = new double[5]; // marker heights
+    private final int[] pos = new int[5]; // actual marker positions
+    private final double[] want = new double[5]; // desired marker positions
+    private final double[] step; // increments of the desired positions
+    private int count = 0; // number of values added
+
+    /** construct a sketch
+     *  @param p -- the quantile to estimate, 0 < p < 1
+     */
+    public QuantileSketch(double p) {
+        this.p = p;
+        step = new double[] { 0, p / 2, p, (1 + p) / 2, 1 };
+        for (int i = 0; i < 5; i++) {
+            pos[i] = i;
+            want[i] = 4 * step[i];
+        }
+    }
+
+    /** add a value to the sketch
+     *  @param x -- the value
+     */
+    public void add(double x) {
+        if (count < 5) { // the first five values are kept exactly, sorted
+            int i = count;
+            while ((i > 0) && (height[i - 1] > x)) {
+                height[i] = height[i - 1];
+                i = i - 1;
+            }
+            height[i] = x;
+            count = count + 1;
+            return;
+        }
+        count = count + 1;
+
+        // find the cell holding x, extending the extremes if needed
+        int k;
+        if (x < height[0]) {
+            height[0] = x;
+            k = 0;
+        } else if (x >= height[4]) {
+            height[4] = Math.max(height[4], x);
+            k = 3;
+        } else {
+            k = 0;
+            while (x >= height[k + 1]) k = k + 1;
+        }
+        for (int i = k + 1; i < 5; i++) pos[i] = pos[i] + 1;
+        for (int i = 0; i < 5; i++) want[i] = want[i] + step[i];
+
+        // nudge the middle markers toward their desired positions
+        for (int i = 1; i < 4; i++) {
+            double d = want[i] - pos[i];
+            if (((d >= 1) && (pos[i + 1] - pos[i] > 1))
+            ||  ((d <= -1) && (pos[i - 1] - pos[i] < -1))) {
+                int s = (d > 0) ? 1 : -1;
+                double h = parabolic(i, s);
+                if ((height[i - 1] < h) && (h < height[i + 1])) {
+                    height[i] = h;
+                } else { // parabola overshoots, fall back to linear
+                    height[i] = height[i] + s * (height[i + s] - height[i])
+                        / (pos[i + s] - pos[i]);
+                }
+                pos[i] = pos[i] + s;
+            }
+        }
+    }
+
+    // piecewise-parabolic prediction of marker i moved by s
+    private double parabolic(int i, int s) {
+        return height[i] + ((double) s / (pos[i + 1] - pos[i - 1])) * (
+            (pos[i] - pos[i - 1] + s) * (height[i + 1] - height[i])
+                / (pos[i + 1] - pos[i])
+          + (pos[i + 1] - pos[i] - s) * (height[i] - height[i - 1])
+                / (pos[i] - pos[i - 1])
+        );
+    }
+
+    /** the current estimate
+     *  @return the estimated quantile, NaN if nothing was added
+     */
+    public double estimate() {
+        if (count == 0) return Double.NaN;
+        if (count <= 5) { // exact, from the sorted values
+            return height[(int) Math.round(p * (count - 1))];
+        }
+        return height[2];
+    }
+}
+
+/** Histogram of durations, in log-scaled buckets of fixed memory
+ *  @see Durations
+ *  Each power of two is split into 32 buckets, so values are kept to
+ *  within about 3%, from a second up to 2**40 seconds, in a few thousand
+ *  longs; recording a value is a little bit arithmetic and an increment.
+ *  Histograms of the same values from different runs add exactly.
+ */
+class Histogram {
+    private static final int subBits = 5; // log2 of buckets per power of 2
+    private static final int subCount = 1 << subBits;
+    private static final int maxExponent = 40; // of the largest bucket
+
+    private final long[] counts = new long[1 + (maxExponent + 1) * subCount];
+    private long count = 0; // number of values recorded
+    private double sum = 0.0; // sum of the values recorded
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /** Record a value
+     *  @param v -- the value, values under 1 share the first bucket
+     */
+    public void record(double v) {
+        counts[bucket(v)]++;
+        count = count + 1;
+        sum = sum + v;
+        min = Math.min(min, v);
+        max = Math.max(max, v);
+    }
+
+    // the bucket of a value, from the bits of the double
+    private static int bucket(double v) {
+        if (!(v >= 1.0)) return 0;
+        final int e = Math.getExponent(v);
+        if (e > maxExponent) return (maxExponent + 1) * subCount;
+        final int sub = (int) (Double.doubleToRawLongBits(v)
+            >>> (52 - subBits)) & (subCount - 1);
+        return 1 + (e << subBits) + sub;
+    }
+
+    // the middle of a bucket
+    private static double middle(int b) {
+        if (b == 0) return 0.5;
+        final int e = (b - 1) >> subBits;
+        final int sub = (b - 1) & (subCount - 1);
+        return Math.scalb(1.0 + (sub + 0.5) / subCount, e);
+    }
+
+    /** Add another histogram into this one
+     *  @param h -- the other histogram
+     */
+    public void add(Histogram h) {
+        for (int b = 0; b < counts.length; b++) counts[b] += h.counts[b];
+        count = count + h.count;
+        sum = sum + h.sum;
+        min = Math.min(min, h.min);
+        max = Math.max(max, h.max);
+    }
+
+    /** the number of values recorded */
+    public long count() {
+        return count;
+    }
+
+    /** the mean of the values recorded, NaN if none */
+    public double mean() {
+        return sum / count;
+    }
+
+    /** the smallest value recorded, NaN if none */
+    public double min() {
+        return (count > 0) ? min : Double.NaN;
+    }
+
+    /** the largest value recorded, NaN if none */
+    public double max() {
+        return (count > 0) ? max : Double.NaN;
+    }
+
+    /** Estimate a quantile
+     *  @param q -- which quantile, 0 < q < 1
+     *  @return the middle of the bucket holding it, NaN if no values
+     */
+    public double quantile(double q) {
+        if (count == 0) return Double.NaN;
+        final long rank = Math.max(1, (long) Math.ceil(q * count));
+        long seen = 0;
+        for (int b = 0; b < counts.length; b++) {
+            seen = seen + counts[b];
+            if (seen >= rank) {
+                return Math.min(Math.max(middle(b), min), max);
+            }
+        }
+        return max;
+    }
+}
+
+/** Histograms of the times people spend in each stage of the disease
+ *  @see Person, whose state changes record them
+ *  @see Histogram
+ *  A simulation with durations keeps one of these; they add, so runs on
+ *  any number of threads can be merged into one at the end.  Generation
+ *  intervals need an infector, but infection here comes from every
+ *  contageous occupant at once, so one of them is picked by the number of
+ *  the person infected, which needs no random draw and leaves the
+ *  simulation itself unchanged.
+ */
+class Durations {
+    /** the histograms kept, in order */
+    public static final String[] names = {
+        "latent", "asymptomatic", "symptomatic", "bedridden",
+        "infection to death", "generation interval"
+    };
+    static final int latent = 0;
+    static final int asymptomatic = 1;
+    static final int symptomatic = 2;
+    static final int bedridden = 3;
+    static final int toDeath = 4;
+    static final int generation = 5;
+
+    /** the quantiles printed */
+    public static final double[] quantiles = {
+        0.05, 0.25, 0.5, 0.75, 0.95, 0.99
+    };
+
+    private final Histogram[] histograms = new Histogram[names.length];
+
+    public Durations() {
+        for (int i = 0; i < names.length; i++) histograms[i] = new Histogram();
+    }
+
+    /** Record a duration
+     *  @param which -- the histogram, latent through generation
+     *  @param seconds -- the duration
+     */
+    void record(int which, double seconds) {
+        histograms[which].record(seconds);
+    }
+
+    /** Add the histograms of another run into these
+     *  @param d -- the other run's histograms
+     *  This may be called from many threads at once.
+     */
+    public synchronized void add(Durations d) {
+        for (int i = 0; i < names.length; i++) {
+            histograms[i].add(d.histograms[i]);
+        }
+    }
+
+    /** Print the histograms as CSV, with durations in days
+     *  @param o -- where to print
+     */
+    public synchronized void print(PrintStream o) {
+        final StringBuilder sb = new StringBuilder("histogram,n,mean,min");
+        for (double q: quantiles) sb.append(",p").append(Math.round(q * 100));
+        o.println(sb.append(",max"));
+        for (int i = 0; i < names.length; i++) {
+            final Histogram h = histograms[i];
+            sb.setLength(0);
+            sb.append(names[i]).append(',').append(h.count());
+            sb.append(',').append(h.mean() / Time.day);
+            sb.append(',').append(h.min() / Time.day);
+            for (double q: quantiles) {
+                sb.append(',').append(h.quantile(q) / Time.day);
+            }
+            sb.append(',').append(h.max() / Time.day);
+            o.println(sb);
+        }
+    }
+
+    /** Write the histograms to a file, as print does
+     *  @param name -- the file name
+     */
+    public void write(String name) {
+        try (PrintStream o = new PrintStream(new FileOutputStream(name))) {
+            print(o);
+        } catch (FileNotFoundException e) {
+            Error.fatal("could not open file: " + name);
+        }
+    }
+}
+
+/** Summary statistics of daily reports across many replicates
+ *  @see Simulation.Reporter
+ *  Each replicate's daily statistics are folded in as they are reported,
+ *  keeping per day and disease state the running mean and variance
+ *  (by Welford's method), the extremes and sketches of the quantiles.
+ *  Memory grows with days times states, not with the number of replicates.
+ */
+class Summary {
+    /** the quantiles reported */
+    public static final double[] quantiles = { 0.05, 0.5, 0.95 };
+
+    // statistics, indexed by day then disease state
+    private final int[][] count;
+    private final double[][] mean;
+    private final double[][] m2; // sum of squared deviations from the mean
+    private final int[][] min;
+    private final int[][] max;
+    private final QuantileSketch[][][] sketch; // day, state, quantile
+
+    /** construct an empty summary
+     *  @param days -- the number of days reported per replicate
+     */
+    public Summary(int days) {
+        final int states = Person.stateCount;
+        count = new int[days][states];
+        mean = new double[days][states];
+        m2 = new double[days][states];
+        min = new int[days][states];
+        max = new int[days][states];
+        sketch = new QuantileSketch[days][states][quantiles.length];
+        for (int d = 0; d < days; d++) {
+            for (int s = 0; s < states; s++) {
+                for (int q = 0; q < quantiles.length; q++) {
+                    sketch[d][s][q] = new QuantileSketch(quantiles[q]);
+                }
+            }
+        }
+    }
+
+    /** fold one daily report into the summary
+     *  @param time -- the time of the report
+     *  @param pop -- the population in each disease state
+     *  This has the signature of a Simulation.Reporter, and is safe to call
+     *  from many simulations at once.
+     */
+    public synchronized void add(double time, int[] pop) {
+        final int d = (int) Math.round(time / Time.day);
+        if ((d < 0) || (d >= count.length)) return;
+        for (int s = 0; s < Person.stateCount; s++) {
+            final int x = pop[s];
+            final int n = count[d][s] + 1;
+            final double delta = x - mean[d][s];
+            count[d][s] = n;
+            mean[d][s] = mean[d][s] + delta / n;
+            m2[d][s] = m2[d][s] + delta * (x - mean[d][s]);
+            if ((n == 1) || (x < min[d][s])) min[d][s] = x;
+            if ((n == 1) || (x > max[d][s])) max[d][s] = x;
+            for (QuantileSketch q: sketch[d][s]) q.add(x);
+        }
+    }
+
+    /** output the summary as CSV
+     *  @param out -- where to put it
+     *  One line per day and disease state that was reported at all.
+     */
+    public synchronized void print(PrintStream out) {
+        out.print("day,state,n,mean,sd,min,max");
+        for (double q: quantiles) out.print(",p" + Math.round(q * 100));
+        out.println();
+
+        final Person.DiseaseStates[] states = Person.DiseaseStates.values();
+        for (int d = 0; d < count.length; d++) {
+            for (int s = 0; s < states.length; s++) {
+                final int n = count[d][s];
+                if (n == 0) continue;
+                StringBuilder sb = new StringBuilder();
+                sb.append(d).append(',').append(states[s].name());
+                sb.append(',').append(n);
+                sb.append(',').append(mean[d][s]);
+                sb.append(',').append(
+                    (n > 1) ? Math.sqrt(m2[d][s] / (n - 1)) : 0.0
+                );
+                sb.append(',').append(min[d][s]);
+                sb.append(',').append(max[d][s]);
+                for (QuantileSketch q: sketch[d][s]) {
+                    sb.append(',').append(q.estimate());
+                }
+                out.println(sb);
+            }
+        }
+    }
+
+    /** Run many replicates of a model and summarize them
+     *  @param m -- the model
+     *  @param top -- a topology shared by all replicates, or null
+     *  @param replicates -- how many replicates to run
+     *  @param seed -- replicate r uses seed+r
+     *  @param threads -- how many replicates to run at once
+     *  @param d -- where to add the duration histograms, or null
+     *  The summary goes to System.out.  Replicates are folded into it in
+     *  replicate order, whatever order they finish in, so the summary
+     *  depends only on the seed and not on the number of threads.
+     *  @see Cache#simulate for how replicates use the seed
+     */
+    public static void run(
+        Model m, Topology top, int replicates, int seed, int threads,
+        Durations d
+    ) {
+        final Summary sum = new Summary((int) Math.ceil(m.endOfTime) + 1);
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final LinkedList < Future < Reports >> runs = new LinkedList < > ();
+        for (int r = 0; r < replicates; r++) {
+            final int replicate = r;
+            runs.add(pool.submit(() -> {
+                final Reports o = new Reports(d != null);
+                Cache.simulate(m, top, seed, replicate,
+                    o::report, o.durations
+                );
+                return o;
+            }));
+        }
+        pool.shutdown();
+        try {
+            while (!runs.isEmpty()) runs.poll().get().addTo(sum, d);
+        } catch (InterruptedException | ExecutionException e) {
+            Error.fatal("replicate failed: " + e);
+        }
+        sum.print(System.out);
+    }
+
+    /** The reports of one replicate, kept until its turn to be summarized
+     *  Summary statistics and quantile sketches depend on the order that
+     *  values are added, so replicates are added in replicate order.
+     */
+    private static class Reports {
+        private final ArrayList < Double > times = new ArrayList < > ();
+        private final ArrayList < int[] > pops = new ArrayList < > ();
+        final Durations durations; // of this replicate, or null if none
+
+        /** @param histograms -- keep duration histograms too?
+         */
+        Reports(boolean histograms) {
+            durations = histograms ? new Durations() : null;
+        }
+
+        /** Note one report, this is a Simulation.Reporter
+         *  @param time -- the time of the report
+         *  @param pop -- the population in each disease state
+         */
+        void report(double time, int[] pop) {
+            times.add(time);
+            pops.add(pop.clone());
+        }
+
+        /** Add this replicate to the summary
+         *  @param sum -- the summary
+         *  @param d -- where the duration histograms go, or null
+         */
+        void addTo(Summary sum, Durations d) {
+            for (int i = 0; i < times.size(); i++) {
+                sum.add(times.get(i), pops.get(i));
+            }
+            if (d != null) d.add(durations);
+        }
+    }
+
+    // the outputs watched by adaptive runs
+    private static final String[] outputs = {
+        "peak symptomatic", "final dead", "final recovered"
+    };
+
+    /** The outputs of one replicate, as it runs
+     */
+    private static class Outputs extends Reports {
+        final double[] value = new double[outputs.length];
+
+        /** @param histograms -- keep duration histograms too?
+         */
+        Outputs(boolean histograms) {
+            super(histograms);
+        }
+
+        @Override
+        void report(double time, int[] pop) {
+            super.report(time, pop);
+            final int sick = Person.DiseaseStates.symptomatic.ordinal();
+            value[0] = Math.max(value[0], pop[sick]);
+            value[1] = pop[Person.DiseaseStates.dead.ordinal()];
+            value[2] = pop[Person.DiseaseStates.recovered.ordinal()];
+        }
+    }
+
+    /** Run replicates until the outputs are known well enough
+     *  @param m -- the model
+     *  @param top -- a topology shared by all replicates, or null
+     *  @param width -- the target half-width of the 95% confidence
+     *  intervals of the outputs, relative to their means
+     *  @param budget -- the most replicates to run
+     *  @param seed -- replicate r uses seed+r
+     *  @param threads -- how many replicates to run at once
+     *  @param d -- where to add the duration histograms, or null
+     *  Replicates run in waves of threads at a time; after each wave the
+     *  confidence intervals of peak symptomatic, final dead and final
+     *  recovered are checked.  Waves are the same whatever the timing, and
+     *  replicates are summarized in replicate order, so the number of
+     *  replicates and the summary depend only on the seed and the number
+     *  of threads, which sets the size of the waves.  The summary goes to
+     *  System.out, and the number of replicates used and the intervals to
+     *  System.err.
+     */
+    public static void runAdaptive(
+        Model m, Topology top, double width, int budget, int seed,
+        int threads, Durations d
+    ) {
+        final Summary sum = new Summary((int) Math.ceil(m.endOfTime) + 1);
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final int wave = Math.max(threads, 2);
+        final double[] mean = new double[outputs.length];
+        final double[] m2 = new double[outputs.length];
+        int n = 0; // replicates so far
+        boolean tight = false;
+        try {
+            while (!tight && (n < budget)) {
+                final LinkedList < Future < Outputs >> runs
+                    = new LinkedList < > ();
+                for (int r = n; r < Math.min(n + wave, budget); r++) {
+                    final int replicate = r;
+                    runs.add(pool.submit(() -> {
+                        final Outputs o = new Outputs(d != null);
+                        Cache.simulate(m, top, seed, replicate,
+                            o::report, o.durations
+                        );
+                        return o;
+                    }));
+                }
+                for (Future < Outputs > f: runs) { // in replicate order
+                    final Outputs o = f.get();
+                    final double[] v = o.value;
+                    o.addTo(sum, d);
+                    n = n + 1;
+                    for (int i = 0; i < outputs.length; i++) {
+                        final double delta = v[i] - mean[i];
+                        mean[i] = mean[i] + delta / n;
+                        m2[i] = m2[i] + delta * (v[i] - mean[i]);
+                    }
+                }
+
+                tight = n >= 5; // too few to trust the variance
+                for (int i = 0; i < outputs.length; i++) {
+                    tight = tight && (halfWidth(m2[i], n)
+                        <= width * Math.abs(mean[i]));
+                }
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            Error.fatal("replicate failed: " + e);
+        } finally {
+            pool.shutdown();
+        }
+        sum.print(System.out);
+
+        System.err.println("adaptive: " + n + " replicates, "
+            + (tight ? "intervals tight" : "budget used up")
+        );
+        for (int i = 0; i < outputs.length; i++) {
+            System.err.printf("  %s: %.2f +/- %.2f%n",
+                outputs[i], mean[i], halfWidth(m2[i], n)
+            );
+        }
+    }
+
+    /** The half-width of a 95% confidence interval for a mean
+     *  @param m2 -- the sum of squared deviations from the mean
+     *  @param n -- the number of values
+     *  @return the half-width, by the normal approximation
+     */
+    private static double halfWidth(double m2, int n) {
+        return (n > 1) ? 1.96 * Math.sqrt(m2 / (n - 1) / n) : Double.MAX_VALUE;
+    }
+}
+
+/** Stand in for a place simulated in another partition
+ *  @see Partition
+ *  People whose homes are in this partition may visit places elsewhere.
+ *  While they do, their location is one of these, which forwards what
+ *  happens to the partition that has the real place.
+ */
+class RemotePlace extends Place {
+
+    /** Construct a stand in
+     *  @param s -- the simulation it is part of
+     *  @param i -- the number of the real place
+     *  @param k -- the kind of place
+     */
+    public RemotePlace(Simulation s, int i, PlaceKind k) {
+        super(s, i, k, 0.0);
+    }
+
+    void arrive(Person p) {
+        p.locate(this);
+        sim.partition.send(
+            Partition.arrive, 0.0, id, p.id, p.state().ordinal()
+        );
+    }
+
+    void depart(Person p) {
+        p.locate(null);
+        sim.partition.send(Partition.depart, 0.0, id, p.id, 0);
+    }
+
+    void contageous(double time, int c) {
+        sim.partition.send(Partition.contageous, time, id, -1, c);
+    }
+
+    void logContageous(TransmissionLog log) {
+        // the occupants are elsewhere
+    }
+}
+
+/** One part of a simulation split over several processes
+ *  @see Distributed for the processes and how they communicate
+ *  Places are split among the partitions by number, and each person is
+ *  simulated by the partition that has their home.  When a person visits
+ *  a place elsewhere, they are represented there by a ghost, see Person.
+ *
+ *  What happens at places elsewhere is queued as messages, and messages
+ *  are exchanged at the times people move, from their Schedules, and at
+ *  day boundaries.  Moves happen at exactly those times, so arrivals and
+ *  departures are exact; changes in contageon and infections of visitors
+ *  in between take effect at the next exchange.
+ */
+class Partition {
+    // kinds of message
+    static final byte arrive = 0; // place, person, state: a visitor comes
+    static final byte depart = 1; // place, person: a visitor leaves
+    static final byte contageous = 2; // place, change: contageon changes
+    static final byte infected = 3; // person: was infected at time
+
+    public final int self; // the number of this partition
+    public final int workers; // the number of partitions
+    private final Topology topology;
+    private Simulation sim; // the simulation of this partition
+    private Person[] people; // people of this partition, by number
+    private final HashMap < Integer, Person > ghosts = new HashMap < > ();
+
+    // messages and reports waiting to be sent
+    private final ByteArrayOutputStream messageBytes
+        = new ByteArrayOutputStream();
+    private final DataOutputStream messages
+        = new DataOutputStream(messageBytes);
+    private int messageCount = 0;
+    private final ByteArrayOutputStream reportBytes
+        = new ByteArrayOutputStream();
+    private final DataOutputStream reports = new DataOutputStream(reportBytes);
+    private int reportCount = 0;
+
+    /** Construct a partition
+     *  @param k -- its number
+     *  @param n -- the number of partitions
+     *  @param t -- the topology being split
+     */
+    public Partition(int k, int n, Topology t) {
+        self = k;
+        workers = n;
+        topology = t;
+    }
+
+    /** Which partition has a place?
+     *  @param place -- the number of the place
+     *  @return the number of the partition
+     *  Places are split into contiguous ranges of numbers.
+     */
+    public int owner(int place) {
+        return (int) (((long) place * workers) / topology.places);
+    }
+
+    /** Does this partition have a place?
+     *  @param place -- the number of the place
+     *  @return true if it does
+     */
+    public boolean owns(int place) {
+        return owner(place) == self;
+    }
+
+    /** Attach this partition to its simulation, after elaboration
+     *  @param s -- the simulation
+     */
+    void attach(Simulation s) {
+        sim = s;
+        people = new Person[topology.people];
+        for (Person p: s.allPeople) people[p.id] = p;
+    }
+
+    /** Queue a message for the partition that has a place
+     *  @param type -- the kind of message
+     *  @param time -- when it happened
+     *  @param place -- the place
+     *  @param person -- the person, if any
+     *  @param arg -- more about the message, depending on type
+     */
+    void send(byte type, double time, int place, int person, int arg) {
+        try {
+            messages.writeInt(owner(place));
+            messages.writeByte(type);
+            messages.writeDouble(time);
+            messages.writeInt(place);
+            messages.writeInt(person);
+            messages.writeInt(arg);
+            messageCount = messageCount + 1;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // impossible for byte arrays
+        }
+    }
+
+    /** A ghost was infected, tell the partition with the real person
+     *  @param time -- when
+     *  @param person -- who
+     */
+    void infected(double time, int person) {
+        send(infected, time, topology.home(person), person, 0);
+    }
+
+    /** Queue a report, this is a Simulation.Reporter
+     *  @param time -- the time of the report
+     *  @param pop -- the statistics for this partition
+     */
+    void report(double time, int[] pop) {
+        try {
+            reports.writeDouble(time);
+            reports.writeInt(pop.length);
+            for (int v: pop) reports.writeInt(v);
+            reportCount = reportCount + 1;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // impossible for byte arrays
+        }
+    }
+
+    /** Exchange messages and reports with the coordinator
+     *  @param time -- the current time
+     *  @param in -- messages come from here
+     *  @param out -- messages and reports go here
+     *  Sends everything queued, then receives and applies the messages
+     *  other partitions sent here.
+     */
+    void exchange(double time, DataInputStream in, DataOutputStream out)
+    throws IOException {
+        out.writeInt(messageCount);
+        messageBytes.writeTo(out);
+        out.writeInt(reportCount);
+        reportBytes.writeTo(out);
+        out.flush();
+        messageBytes.reset();
+        messageCount = 0;
+        reportBytes.reset();
+        reportCount = 0;
+
+        final int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            final byte type = in.readByte();
+            final double t = in.readDouble();
+            final int place = in.readInt();
+            final int person = in.readInt();
+            final int arg = in.readInt();
+            if (type == arrive) {
+                final Person g = ghost(person);
+                g.mirror(Person.DiseaseStates.values()[arg]);
+                sim.place(place).arrive(g);
+                sim.place(place).scheduleInfectPerson(time, g);
+            } else if (type == depart) {
+                sim.place(place).depart(ghost(person));
+            } else if (type == contageous) {
+                sim.place(place).contageous(time, arg);
+            } else if (type == infected) {
+                people[person].infectedElsewhere(t);
+            }
+        }
+    }
+
+    /** Find or make the ghost of a person from another partition
+     *  @param person -- the number of the person
+     *  @return the ghost
+     */
+    private Person ghost(int person) {
+        Person g = ghosts.get(person);
+        if (g == null) {
+            g = new Person(sim, sim.model.roles.get(topology.role[person]),
+                person, Person.DiseaseStates.uninfected
+            );
+            ghosts.put(person, g);
+        }
+        return g;
+    }
+
+    /** The times at which partitions exchange messages
+     *  @param m -- the model
+     *  @return every time someone moves, every midnight, and the end of time
+     */
+    static TreeSet < Double > exchangeTimes(Model m) {
+        final TreeSet < Double > times = new TreeSet < > ();
+        for (double day = 0; day < m.endOfTime; day++) {
+            times.add(day * Time.day);
+            for (Role r: m.roles) r.scheduleTimes(times, day);
+        }
+        times.add(m.endOfTime * Time.day);
+        return times;
+    }
+}
+
+/** Simulation distributed over several worker processes
+ *  @see Partition for how the simulation is split
+ *  A coordinator starts the workers on this machine, then every worker
+ *  connects to it over a loopback socket.  Each worker builds the same
+ *  Topology from the same seed, but only creates the objects for its own
+ *  partition.  At each exchange time, every worker sends the coordinator
+ *  its messages and reports, the coordinator routes the messages to their
+ *  partitions, and sums the reports into the usual output.
+ *
+ *  Worker protocol, all in DataOutputStream form:
+ *  <pre>
+ *    coordinator to worker: int partition, int partitions, int seed,
+ *        int length, length bytes of model text
+ *    then per exchange, worker to coordinator:
+ *        int n, n x (int to, byte type, double time, int place,
+ *                    int person, int arg),
+ *        int r, r x (double time, int length, length x int)
+ *    and coordinator to worker:
+ *        int n, n x (byte type, double time, int place, int person, int arg)
+ *  </pre>
+ */
+class Distributed {
+    private Distributed() {} // nobody should ever construct one
+
+    /** Run a distributed simulation, as the coordinator
+     *  @param name -- the file name of the model
+     *  @param m -- the model, as read from that file
+     *  @param workers -- the number of worker processes
+     *  @param seed -- the seed for the topology; worker k uses seed+1+k
+     *  @param out -- the output stage for the report
+     *  @param breakdown -- report the full breakdown?
+     */
+    public static void coordinate(
+        String name, Model m, int workers, int seed, AsyncOutput out,
+        boolean breakdown
+    ) {
+        final Socket[] socket = new Socket[workers];
+        final DataInputStream[] in = new DataInputStream[workers];
+        final DataOutputStream[] to = new DataOutputStream[workers];
+        final Process[] process = new Process[workers];
+        try (ServerSocket server = new ServerSocket(
+            0, workers, InetAddress.getLoopbackAddress()
+        )) {
+            final byte[] text = Files.readAllBytes(Paths.get(name));
+
+            // start the workers, they connect back to us
+            final List < String > command = new ArrayList < > (List.of(
+                Paths.get(System.getProperty("java.home"), "bin", "java")
+                    .toString(),
+                "-cp", System.getProperty("java.class.path"), "epidemic"
+            ));
+            if (m.locality) command.add("--locality");
+            command.add("--worker");
+            command.add("localhost:" + server.getLocalPort());
+            for (int k = 0; k < workers; k++) {
+                process[k] = new ProcessBuilder(command).inheritIO().start();
+            }
+            for (int k = 0; k < workers; k++) {
+                socket[k] = server.accept();
+                in[k] = new DataInputStream(new BufferedInputStream(
+                    socket[k].getInputStream(), 1 << 16
+                ));
+                to[k] = new DataOutputStream(new BufferedOutputStream(
+                    socket[k].getOutputStream(), 1 << 16
+                ));
+                to[k].writeInt(k);
+                to[k].writeInt(workers);
+                to[k].writeInt(seed);
+                to[k].writeInt(text.length);
+                to[k].write(text);
+                to[k].flush();
+            }
+
+            // the reports, summed over workers, until all have reported
+            final TreeMap < Double, int[] > sums = new TreeMap < > ();
+            final TreeMap < Double, Integer > counts = new TreeMap < > ();
+
+            for (double time: Partition.exchangeTimes(m)) {
+                final ByteArrayOutputStream[] routed
+                    = new ByteArrayOutputStream[workers];
+                final int[] routedCount = new int[workers];
+                final DataOutputStream[] route = new DataOutputStream[workers];
+                for (int k = 0; k < workers; k++) {
+                    routed[k] = new ByteArrayOutputStream();
+                    route[k] = new DataOutputStream(routed[k]);
+                }
+
+                for (int k = 0; k < workers; k++) { // gather
+                    final int n = in[k].readInt();
+                    for (int i = 0; i < n; i++) {
+                        final int dest = in[k].readInt();
+                        route[dest].writeByte(in[k].readByte());
+                        route[dest].writeDouble(in[k].readDouble());
+                        route[dest].writeInt(in[k].readInt());
+                        route[dest].writeInt(in[k].readInt());
+                        route[dest].writeInt(in[k].readInt());
+                        routedCount[dest]++;
+                    }
+                    final int r = in[k].readInt();
+                    for (int i = 0; i < r; i++) {
+                        final double t = in[k].readDouble();
+                        final int[] pop = new int[in[k].readInt()];
+                        for (int j = 0; j < pop.length; j++) {
+                            pop[j] = in[k].readInt();
+                        }
+                        final int[] sum = sums.get(t);
+                        if (sum == null) {
+                            sums.put(t, pop);
+                        } else {
+                            for (int j = 0; j < pop.length; j++) {
+                                sum[j] += pop[j];
+                            }
+                        }
+                        counts.merge(t, 1, Integer::sum);
+                    }
+                }
+                for (int k = 0; k < workers; k++) { // scatter
+                    to[k].writeInt(routedCount[k]);
+                    routed[k].writeTo(to[k]);
+                    to[k].flush();
+                }
+
+                // output the reports every worker has made, in order
+                while (!counts.isEmpty()
+                && (counts.firstEntry().getValue() == workers)) {
+                    final double t = counts.pollFirstEntry().getKey();
+                    out.publish(
+                        breakdown ? Simulation.breakdownFormat
+                                  : Person.csvFormat,
+                        t, sums.remove(t), null
+                    );
+                }
+            }
+
+            for (int k = 0; k < workers; k++) {
+                socket[k].close();
+                if (process[k].waitFor() != 0) {
+                    Error.warn("worker " + k + " failed");
+                }
+            }
+        } catch (EOFException e) {
+            Error.fatal("a worker quit unexpectedly");
+        } catch (IOException e) {
+            Error.fatal("distributed simulation failed: " + e);
+        } catch (InterruptedException e) {
+            Error.fatal("interrupted waiting for workers");
+        } finally {
+            for (Process p: process) if (p != null) p.destroy();
+        }
+    }
+
+    /** Run one partition of a distributed simulation, as a worker
+     *  @param address -- host:port of the coordinator
+     *  @param locality -- renumber the topology, as the coordinator asked?
+     */
+    public static void work(String address, boolean locality) {
+        final int colon = address.lastIndexOf(':');
+        try (Socket socket = new Socket(
+            address.substring(0, colon),
+            Integer.parseInt(address.substring(colon + 1))
+        )) {
+            final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(socket.getInputStream(), 1 << 16)
+            );
+            final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream(), 1 << 16)
+            );
+            final int self = in.readInt();
+            final int workers = in.readInt();
+            final int seed = in.readInt();
+            final byte[] text = new byte[in.readInt()];
+            in.readFully(text);
+
+            final Model m = epidemic.buildModel(
+                new MyScanner(new String(text, StandardCharsets.UTF_8))
+            );
+            m.locality = locality;
+            final Topology t = new Topology(m, new MyRandom(seed));
+            final Partition part = new Partition(self, workers, t);
+            final Simulation sim = new Simulation(
+                t, new MyRandom(seed + 1 + self), part::report, null, part
+            );
+            for (double time: Partition.exchangeTimes(m)) {
+                sim.run(time);
+                part.exchange(time, in, out);
+            }
+        } catch (IOException | NumberFormatException e) {
+            Error.fatal("worker: " + e);
+        }
+    }
+}
+
+/** Synthetic models and a benchmark of how simulation scales with them
+ *  The generated models are in the grammar of epidemic.buildModel, with
+ *  a home for everyone and other kinds of places visited on schedules.
+ *  The benchmark simulates generated models of 10**4 people, 10**5 and
+ *  so on, appending a line per phase of each run to a CSV results file,
+ *  so results from different versions can be compared.  The events of a
+ *  phase are those done in it, so elaboration, which schedules the first
+ *  day's moves for the run phase to do, records none.
+ */
+class Benchmark {
+    private Benchmark() {} // nobody should ever construct a benchmark
+
+    /** Generate a model
+     *  @param people -- the population
+     *  @param kinds -- the number of kinds of place, including homes
+     *  @param roles -- the number of roles
+     *  @param days -- the end of time
+     *  @param seed -- the seed for the random choices
+     *  @return the text of the model
+     *  Homes have a median of 2 to 5 people; other places have medians
+     *  spread log-uniformly from 5 to 500, like shops, offices and schools,
+     *  with scatter proportional to the median.  Each role visits up to two
+     *  kinds of place, one for most of the day and one for an evening.
+     */
+    public static String generate(
+        int people, int kinds, int roles, double days, long seed
+    ) {
+        final MyRandom r = new MyRandom(seed);
+        final StringBuilder sb = new StringBuilder();
+        sb.append("population ").append(people).append(";\n");
+        sb.append("infected ").append(Math.max(1, people / 1000));
+        sb.append(";\n");
+
+        final double home = 2 + r.nextInt(4);
+        sb.append(String.format("place home %.0f %.1f 0.02;\n",
+            home, home / 2
+        ));
+        for (int k = 1; k < kinds; k++) {
+            final double median = 5 * Math.pow(100, r.nextDouble());
+            sb.append(String.format("place k%d %.1f %.1f %.4f;\n",
+                k, median, median / 2, 0.1 / median
+            ));
+        }
+
+        for (int i = 0; i < roles; i++) {
+            sb.append(String.format("role r%d %d home", i, 1 + r.nextInt(50)));
+            int day = 0; // the daytime kind of place, 0 if none
+            if ((kinds > 1) && (r.nextInt(5) > 0)) { // usually
+                day = 1 + r.nextInt(kinds - 1);
+                final int start = 7 + r.nextInt(4);
+                sb.append(String.format(" k%d (%d-%d)",
+                    day, start, start + 3 + r.nextInt(6)
+                ));
+            }
+            final int others = kinds - ((day > 0) ? 2 : 1); // evening kinds
+            if ((others > 0) && (r.nextInt(2) > 0)) { // the evening, sometimes
+                int evening = 1 + r.nextInt(others); // not the daytime one
+                if ((day > 0) && (evening >= day)) evening = evening + 1;
+                final int start = 19 + r.nextInt(2);
+                sb.append(String.format(" k%d (%d-%d)",
+                    evening, start, start + 1 + r.nextInt(3)
+                ));
+            }
+            sb.append(";\n");
+        }
+
+        sb.append(String.format("end %.0f;\n", days));
+        sb.append("latent 2.0 1;\n");
+        sb.append("asymptomatic 3 1;\n");
+        sb.append("symptomatic 5 2 0.9;\n");
+        sb.append("bedridden 8 2 0.9;\n");
+        return sb.toString();
+    }
+
+    /** Measurements of the JVM between phases of a run
+     */
+    private static class Gauge {
+        private long start; // when the phase started, in nanoseconds
+        private long gc; // total collection time then, in milliseconds
+
+        /** Start a phase
+         *  Peak heap use is measured from here.
+         */
+        void start() {
+            for (MemoryPoolMXBean pool:
+                ManagementFactory.getMemoryPoolMXBeans()
+            ) {
+                pool.resetPeakUsage();
+            }
+            gc = gcTime();
+            start = System.nanoTime();
+        }
+
+        /** End a phase, recording it
+         *  @param o -- the results file
+         *  @param people -- the population being simulated
+         *  @param phase -- what was done
+         *  @param events -- the number of events it took, or 0
+         */
+        void end(PrintStream o, int people, String phase, long events) {
+            final long wall = System.nanoTime() - start;
+            long peak = 0;
+            for (MemoryPoolMXBean pool:
+                ManagementFactory.getMemoryPoolMXBeans()
+            ) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    peak = peak + pool.getPeakUsage().getUsed();
+                }
+            }
+            o.printf("%s,%d,%s,%.1f,%d,%.0f,%.1f,%d%n",
+                java.time.LocalDateTime.now().withNano(0), people, phase,
+                wall / 1e6, events, events / (wall / 1e9),
+                peak / (1024.0 * 1024.0), gcTime() - gc
+            );
+            o.flush();
+        }
+
+        /** Total time spent collecting garbage
+         *  @return milliseconds, over all collectors
+         */
+        private static long gcTime() {
+            long t = 0;
+            for (GarbageCollectorMXBean gc:
+                ManagementFactory.getGarbageCollectorMXBeans()
+            ) {
+                t = t + Math.max(0, gc.getCollectionTime());
+            }
+            return t;
+        }
+    }
+
+    /** Benchmark generated models of increasing size
+     *  @param name -- the results file, appended to
+     *  @param max -- the largest population to simulate
+     *  @param kinds -- the number of kinds of place
+     *  @param roles -- the number of roles
+     *  @param seed -- the seed for generation and simulation
+     *  Stops early if the heap runs out, noting that in the results.
+     */
+    public static void run(
+        String name, int max, int kinds, int roles, int seed
+    ) {
+        final File f = new File(name);
+        final boolean fresh = !f.exists();
+        try (PrintStream o = new PrintStream(new FileOutputStream(f, true))) {
+            if (fresh) {
+                o.println("date,people,phase,wall_ms,events,events_per_s,"
+                    + "peak_heap_mb,gc_ms"
+                );
+            }
+            final Gauge g = new Gauge();
+            for (long n = 10000; n <= max; n = n * 10) {
+                final int people = (int) n;
+                try {
+                    g.start();
+                    final String text
+                        = generate(people, kinds, roles, 30, seed);
+                    g.end(o, people, "generate", 0);
+
+                    g.start();
+                    final Model m = epidemic.buildModel(new MyScanner(text));
+                    Error.exitIfWarnings("generated model is invalid");
+                    g.end(o, people, "parse", 0);
+
+                    g.start();
+                    final Simulation sim = new Simulation(
+                        m, new MyRandom(seed), (double t, int[] pop) -> {}
+                    );
+                    g.end(o, people, "elaborate", 0); // schedules, runs none
+
+                    g.start();
+                    sim.run();
+                    g.end(o, people, "run", sim.events());
+                } catch (OutOfMemoryError e) {
+                    g.end(o, people, "out of memory", 0);
+                    break;
+                }
+                System.err.println("benchmarked " + people + " people");
+            }
+        } catch (FileNotFoundException e) {
+            Error.fatal("could not write file: " + name);
+        }
+    }
+}
+
+/** Predictions of what simulating a model will take, without doing it
+ *  @see Role#number
+ *  @see PlaceKind#meanSize
+ *  The predictions follow how Topology and Simulation build a model:
+ *  each day's moves are scheduled at its midnight, so the event set holds
+ *  about a day of moves.  Object sizes assume a 64-bit JVM with compressed
+ *  references.
+ */
+class Plan {
+    private Plan() {} // nobody should ever construct a plan
+
+    // estimated bytes per object, including list and queue overhead
+    private static final long personBytes = 36; // incl. allPeople slot
+    private static final long placeBytes = 84; // incl. occupant list
+    private static final long occupantBytes = 24; // a person at a place
+    private static final long eventBytes = 64; // incl. action, queue slot
+    private static final long intBytes = 4; // topology arrays hold ints
+
+    /** Print the predictions for a model, with recommendations
+     *  @param m -- the model
+     *  @param o -- where to print
+     */
+    public static void print(Model m, PrintStream o) {
+        final int kinds = m.placeKinds.size();
+        final long[] members = new long[kinds];
+        long people = 0;
+        long movesPerDay = 0;
+        for (Role r: m.roles) {
+            final int n = r.number(m);
+            people = people + n;
+            movesPerDay = movesPerDay + (long) n * r.movesPerDay();
+            r.addMembers(n, members);
+        }
+
+        o.printf("people: %d in %d roles%n", people, m.roles.size());
+        long places = 0;
+        for (PlaceKind pk: m.placeKinds) {
+            final long p = Math.round(members[pk.index] / pk.meanSize());
+            places = places + p;
+            o.printf("places: %d of kind %s, for %d people%n",
+                p, pk.name, members[pk.index]
+            );
+        }
+
+        final long events = movesPerDay + 3; // + report, midnight, the end
+        o.printf("moves per day: %d%n", movesPerDay);
+        o.printf("peak event set: %d events, a day of moves,"
+            + " plus infection draws%n", events
+        );
+
+        final long heap = people * personBytes
+            + places * placeBytes + people * occupantBytes
+            + events * eventBytes
+            + intBytes * (people * (kinds + 1) + places); // topology
+        final long max = Runtime.getRuntime().maxMemory();
+        o.printf("estimated heap: %d MB, of %d MB available%n",
+            heap >> 20, max >> 20
+        );
+        o.printf("off the heap: %d MB of people's state%n",
+            (people * PopulationFile.recordSize) >> 20
+        );
+
+        // recommendations, from the options that exist
+        if (heap > max * 3 / 4) {
+            final long split = (heap + max / 2 - 1) / (max / 2);
+            o.printf("recommend: -Xmx%dm, or --distributed %d%n",
+                (heap * 3 / 2) >> 20, split
+            );
+        } else {
+            o.printf("recommend: --threads %d for replicates or sweeps%n",
+                Math.max(1, Math.min(
+                    Runtime.getRuntime().availableProcessors(),
+                    max / Math.max(heap * 3 / 2, 1)
+                ))
+            );
+        }
+    }
+}
+
+/** Analytic estimates of how fast the disease spreads at the start
+ *  @see Plan for predictions of what simulating a model will take
+ *  Nothing is simulated.  Each role is present at each kind of place for
+ *  certain hours of the day, home being wherever it is not scheduled to be,
+ *  and place membership is shuffled, so the people sharing a place are a
+ *  sample of everyone linked to places of that kind.  From this and the
+ *  infection rules come the hours an infected person of one role spends
+ *  with each person of another, moving about and then bedridden where they
+ *  went to bed, and so the next-generation matrix: the expected infections
+ *  in each role caused by one infected person of each role, when nobody is
+ *  immune.  R0 is its largest eigenvalue.  Interventions, and the using
+ *  up of susceptible people within a place, are not considered.
+ */
+class Estimate {
+    private Estimate() {} // nobody should ever construct an estimate
+
+    /** The stays of a role at a kind of place, through a day
+     *  @param r -- the role
+     *  @param k -- the index of the kind of place
+     *  @return the start and end hour of each stay, or null if the role
+     *  is never there
+     */
+    static double[][] presence(Role r, int k) {
+        final int n = r.visitKind.length;
+        final double[][] visits = new double[n][];
+        for (int v = 0; v < n; v++) {
+            visits[v] = new double[] {
+                Math.min(r.visitSchedule[v].startTime / Time.hour, 24),
+                Math.min(r.visitSchedule[v].endTime / Time.hour, 24),
+                r.visitKind[v]
+            };
+        }
+
+        final ArrayList < double[] > stays = new ArrayList < > ();
+        if ((r.homeKind != null) && (r.homeKind.index == k)) {
+            // home is the time between the visits
+            Arrays.sort(visits, (double[] a, double[] b) ->
+                Double.compare(a[0], b[0])
+            );
+            double home = 0.0; // when they are next home
+            for (double[] v: visits) {
+                if (v[0] > home) stays.add(new double[] { home, v[0] });
+                home = Math.max(home, v[1]);
+            }
+            if (home < 24) stays.add(new double[] { home, 24 });
+        } else {
+            for (double[] v: visits) if (v[2] == k) stays.add(v);
+        }
+        return stays.isEmpty() ? null : stays.toArray(new double[0][]);
+    }
+
+    /** Hours present in a day
+     *  @param a -- stays, as presence gives them
+     *  @return the total hours
+     */
+    static double hours(double[][] a) {
+        double h = 0.0;
+        for (double[] s: a) h = h + (s[1] - s[0]);
+        return h;
+    }
+
+    /** Hours two roles are both present in a day
+     *  @param a -- stays of one, as presence gives them
+     *  @param b -- stays of the other
+     *  @return the total hours in common
+     */
+    static double overlap(double[][] a, double[][] b) {
+        double h = 0.0;
+        for (double[] s: a) {
+            for (double[] t: b) {
+                h = h + Math.max(0.0,
+                    Math.min(s[1], t[1]) - Math.max(s[0], t[0])
+                );
+            }
+        }
+        return h;
+    }
+
+    /** The next-generation matrix of a model
+     *  @param m -- the model
+     *  @return k, where k[j][i] is the expected number of people of role j
+     *  infected by one infected person of role i
+     */
+    static double[][] nextGeneration(Model m) {
+        final int roles = m.roles.size();
+        final int kinds = m.placeKinds.size();
+
+        // who is linked to each kind of place, and when they are there
+        final int[] number = new int[roles];
+        final long[] members = new long[kinds];
+        final double[][][][] stays = new double[roles][kinds][][];
+        for (Role r: m.roles) {
+            number[r.index] = r.number(m);
+            r.addMembers(number[r.index], members);
+            for (int k = 0; k < kinds; k++) stays[r.index][k] = presence(r, k);
+        }
+
+        // the expected number of others in an infected person's place, as
+        // people are more often in big places, E[size^2]/E[size] - 1
+        final double[] others = new double[kinds];
+        for (PlaceKind pk: m.placeKinds) {
+            final double[] moments = pk.sizeMoments();
+            others[pk.index] = moments[1] / moments[0] - 1;
+        }
+
+        // the outcomes for a person who becomes contageous, each with its
+        // probability, mean time moving about and mean time bedridden
+        final double toSymptoms = 1 - m.asymptomatic.recovery();
+        final double toBed = 1 - m.symptomatic.recovery();
+        final double asymptomatic = m.asymptomatic.mean();
+        final double symptomatic = m.symptomatic.mean();
+        final double[] chance = {
+            1 - toSymptoms, toSymptoms * (1 - toBed), toSymptoms * toBed
+        };
+        final double[] moving = {
+            asymptomatic, asymptomatic + symptomatic, asymptomatic + symptomatic
+        };
+        final double[] bedridden = { 0.0, 0.0, m.bedridden.mean() };
+        final double contageous = 1 - m.latent.recovery();
+
+        final double[][] next = new double[roles][roles];
+        for (int i = 0; i < roles; i++) {
+            for (int j = 0; j < roles; j++) {
+                for (PlaceKind pk: m.placeKinds) {
+                    final int k = pk.index;
+                    final double[][] si = stays[i][k];
+                    final double[][] sj = stays[j][k];
+                    if ((si == null) || (sj == null)) continue;
+
+                    // seconds together a day, moving about or bedridden
+                    // where i was when they went to bed
+                    final double together = overlap(si, sj) * Time.hour;
+                    final double bed = (hours(si) / 24) * hours(sj) * Time.hour;
+                    double infect = 0.0; // chance of infecting one of j
+                    for (int o = 0; o < chance.length; o++) {
+                        final double exposure = together * moving[o] / Time.day
+                            + bed * bedridden[o] / Time.day;
+                        infect = infect + chance[o]
+                            * (1 - Math.exp(-pk.transmissivity() * exposure));
+                    }
+                    next[j][i] = next[j][i] + contageous * infect
+                        * others[k] * number[j] / members[k];
+                }
+            }
+        }
+        return next;
+    }
+
+    /** The largest eigenvalue of a next-generation matrix
+     *  @param k -- the matrix, which has no negative elements
+     *  @return the eigenvalue, R0
+     *  This is by power iteration on k plus the identity, which converges
+     *  even when k alone would cycle.
+     */
+    static double r0(double[][] k) {
+        final int n = k.length;
+        double[] v = new double[n];
+        Arrays.fill(v, 1.0 / n);
+        double r = 0.0;
+        for (int iteration = 0; iteration < 1000; iteration++) {
+            final double[] w = new double[n];
+            double sum = 0.0;
+            for (int j = 0; j < n; j++) {
+                w[j] = v[j];
+                for (int i = 0; i < n; i++) w[j] = w[j] + k[j][i] * v[i];
+                sum = sum + w[j];
+            }
+            for (int j = 0; j < n; j++) w[j] = w[j] / sum;
+            v = w;
+            final double last = r;
+            r = sum - 1; // v summed to 1 before the step
+            if (Math.abs(r - last) < 1e-12 * Math.max(r, 1.0)) break;
+        }
+        return r;
+    }
+
+    /** The mean time from being infected to infecting someone else
+     *  @param m -- the model
+     *  @return the mean generation time, in seconds
+     *  Infections are taken to be spread evenly over the contageous time,
+     *  so the mean is the latent time plus half the contageous time,
+     *  weighted by the contageous time.
+     */
+    static double generationTime(Model m) {
+        final double toSymptoms = 1 - m.asymptomatic.recovery();
+        final double toBed = 1 - m.symptomatic.recovery();
+        final InfectionRule a = m.asymptomatic;
+        final InfectionRule s = m.symptomatic;
+        final InfectionRule b = m.bedridden;
+
+        // the mean and mean square of the contageous time
+        final double mean = a.mean()
+            + toSymptoms * (s.mean() + toBed * b.mean());
+        final double meanSquare = a.meanSquare()
+            + toSymptoms * (2 * a.mean() * s.mean() + s.meanSquare())
+            + toSymptoms * toBed * (
+                2 * (a.mean() + s.mean()) * b.mean() + b.meanSquare()
+            );
+        return m.latent.mean() + meanSquare / (2 * mean);
+    }
+
+    /** The early growth rate of an outbreak
+     *  @param m -- the model
+     *  @param r0 -- its R0
+     *  @return the growth rate, per day
+     *  This solves the Euler-Lotka equation, 1 = R0 E[exp(-r g)] for the
+     *  generation time g, taking infections to be spread evenly over the
+     *  contageous time.  The expectation is over a fixed sample of latent
+     *  and contageous times, drawn as simulations draw them.
+     */
+    static double growthRate(Model m, double r0) {
+        final MyRandom rand = new MyRandom(0);
+        final int n = 4000;
+        final double[] latent = new double[n];
+        final double[] contageous = new double[n];
+        double mean = 0.0; // mean contageous time
+        for (int i = 0; i < n; i++) {
+            latent[i] = m.latent.duration(rand) / Time.day;
+            double c = m.asymptomatic.duration(rand);
+            if (!m.asymptomatic.recover(rand)) {
+                c = c + m.symptomatic.duration(rand);
+                if (!m.symptomatic.recover(rand)) {
+                    c = c + m.bedridden.duration(rand);
+                }
+            }
+            contageous[i] = c / Time.day;
+            mean = mean + contageous[i] / n;
+        }
+
+        // R0 E[exp(-r g)] falls as r rises, so bisect for where it is 1
+        double lo = -1.0;
+        double hi = 10.0;
+        for (int iteration = 0; iteration < 32; iteration++) {
+            final double r = (lo + hi) / 2;
+            double sum = 0.0; // sum of E[exp(-r g)] for each sample
+            for (int i = 0; i < n; i++) {
+                // infections over the contageous time c, weighted by c
+                final double c = contageous[i];
+                final double spread = (Math.abs(r * c) < 1e-9)
+                    ? c : -Math.expm1(-r * c) / r;
+                sum = sum + Math.exp(-r * latent[i]) * spread;
+            }
+            if (r0 * sum / (n * mean) > 1.0) {
+                lo = r;
+            } else {
+                hi = r;
+            }
+        }
+        return (lo + hi) / 2;
+    }
+
+    /** Print the estimates for a model
+     *  @param m -- the model
+     *  @param o -- where to print
+     */
+    public static void print(Model m, PrintStream o) {
+        final long start = System.nanoTime();
+        final double[][] next = nextGeneration(m);
+        final double r0 = r0(next);
+        final double generation = generationTime(m) / Time.day;
+        final double growth = growthRate(m, r0);
+        final long micros = (System.nanoTime() - start) / 1000;
+
+        o.printf("R0: %.3f%n", r0);
+        for (Role r: m.roles) {
+            double caused = 0.0;
+            for (int j = 0; j < next.length; j++) {
+                caused = caused + next[j][r.index];
+            }
+            o.printf("role %s: %.3f infections caused by each infected%n",
+                r.name, caused
+            );
+        }
+        o.printf("generation time: %.2f days%n", generation);
+        if (r0 > 1.0) {
+            o.printf("growth rate: %.4f per day, doubling in %.2f days%n",
+                growth, Math.log(2) / growth
+            );
+        } else {
+            o.printf("growth rate: %.4f per day, the outbreak dies out%n",
+                growth
+            );
+        }
+        o.printf("estimated in %.1f ms%n", micros / 1000.0);
+    }
+}
 
-    // instance variables that change as simulation progressses
-    private DiseaseStates diseaseState = DiseaseStates.uninfected;
-    public Place location; // initialized by emplace
-    private double infectMeTime = 0.0; // time I will get infected
-    // for the above, the default 0.0 allows for infection at startup
+/** On-disk cache of simulation reports
+ *  @see Cache#simulate
+ *  A simulation is determined by its model, its seed and the version of
+ *  this program, so its reports can be stored under a hash of those and
+ *  replayed instead of simulating again.  The model is hashed in the form
+ *  Model.toString gives it, so layout and comments in the model file, and
+ *  the order of its statements apart from places and roles, don't matter.
+ *
+ *  Each entry is a file named by its key, written to a temporary name
+ *  and then renamed, so processes and threads sharing a directory never
+ *  see a partial entry.  Hits touch the file, and when the directory
+ *  grows past its limit, the least recently used entries are deleted,
+ *  under a file lock so only one process evicts at a time.
+ */
+class Cache {
+    /** change this whenever the same model and seed give different results
+     */
+    public static final String engineVersion = "2026-10-19.3";
 
-    // static variables used for all people
-    public static LinkedList < Person > allPeople
-        = new LinkedList < Person > ();
-    private static MyRandom rand = MyRandom.stream;
+    private static final int magic = 0x45504943; // "EPIC"
+    private static final String suffix = ".rep";
 
-    /** Construct a new person to perform some role
-     *  @param r -- the role
-     *  This constructor deliberately defers putting people in any places
-     */
-    public Person(Role r) {
-        role = r;
-        allPeople.add(this); // include this person in the list of all
-        popByState[diseaseState.ordinal()]++; // include it in the statistics
-    };
+    private static Path dir = null; // the cache directory, null if none
+    private static long limit; // the most bytes to keep there
 
-    // methods used during model construction, at time 0.0
+    private Cache() {} // nobody should ever construct a cache
 
-    /** Associate this person to a particular place
-     *  @param p -- the place
-     *  @param s -- the associated schedule
+    /** Use a cache for the rest of this run
+     *  @param name -- the directory, created if needed
+     *  @param megabytes -- the most space to use
      */
-    public void emplace(Place p, Schedule s) {
-        if (s != null) {
-            places.add(new PlaceSchedule(p, s));
-        } else {
-            assert home == null: "Role guarantees only one home place";
-            home = p;
-            location = home;
-
-            location.arrive(this); // tell the location about new occupant
+    public static void open(String name, long megabytes) {
+        try {
+            dir = Files.createDirectories(Paths.get(name));
+        } catch (IOException e) {
+            Error.fatal("could not create directory: " + name);
         }
+        limit = megabytes << 20;
     }
 
-    // simulation of behavior
+    /** Simulate a model, or replay its reports from the cache
+     *  @param m -- the model
+     *  @param seed -- the seed of replicate 0
+     *  @param replicate -- the replicate, whose stream is seeded seed+r
+     *  @param rep -- where the reports go
+     *  Without a cache, this just simulates.
+     */
+    public static void simulate(
+        Model m, int seed, int replicate, Simulation.Reporter rep
+    ) {
+        simulate(m, null, seed, replicate, rep, null);
+    }
 
-    /** Schedule the person's activity in each day
-     *  @author Andy Chen, Blake Thorson
-     *  @param day -- the day of the simulation
+    /** Simulate a model, or replay its reports from the cache
+     *  @param m -- the model
+     *  @param top -- the topology of m shared by all replicates, elaborated
+     *  from a stream seeded seed, or null for each replicate to elaborate
+     *  its own
+     *  @param seed -- the seed of replicate 0
+     *  @param replicate -- the replicate
+     *  @param rep -- where the reports go
+     *  @param d -- where to add the run's duration histograms, or null
+     *  With a shared topology, replicate r draws from a stream seeded
+     *  seed+1+r, so it never repeats the draws the topology was made with.
+     *  If m.commonRandom, each replicate's stream is split into substreams,
+     *  so runs of two scenarios with the same seed differ only where the
+     *  scenarios make them; the results differ from those of unsplit
+     *  streams, see Simulation#rand(int, Person.DiseaseStates).
+     *  The cache keeps only reports, so runs with histograms always run.
      */
-    public void dailySchedule(double day) {
-        if (diseaseState != DiseaseStates.bedridden
-            && diseaseState != DiseaseStates.dead) {
-            for (PlaceSchedule ps: places) {
-                Simulator.schedule(day * Time.day + ps.schedule.startTime,
-                    (double t) -> move(t, ps.place)
-                );
-                Simulator.schedule(day * Time.day + ps.schedule.endTime,
-                    (double t) -> move(t, home)
-                );
+    public static void simulate(
+        Model m, Topology top, int seed, int replicate,
+        Simulation.Reporter rep, Durations d
+    ) {
+        if (d != null) {
+            final Simulation sim = simulation(m, top, seed, replicate, rep);
+            sim.durations = new Durations();
+            sim.run();
+            d.add(sim.durations);
+            return;
+        }
+        if (dir == null) {
+            simulation(m, top, seed, replicate, rep).run();
+            return;
+        }
+        final Path entry = dir.resolve(
+            key(m, top, seed, replicate) + suffix
+        );
+        if (replay(entry, rep)) return;
+
+        final ArrayList < Double > times = new ArrayList < > ();
+        final ArrayList < int[] > reports = new ArrayList < > ();
+        simulation(m, top, seed, replicate,
+            (double t, int[] pop) -> {
+                times.add(t);
+                reports.add(pop.clone());
+                rep.report(t, pop);
             }
+        ).run();
+        store(entry, times, reports);
+    }
+
+    // create one replicate, as Cache.simulate describes
+    private static Simulation simulation(
+        Model m, Topology top, int seed, int replicate,
+        Simulation.Reporter rep
+    ) {
+        if (top == null) {
+            return new Simulation(
+                m, new MyRandom(seed + replicate, m.commonRandom), rep
+            );
         }
+        return new Simulation(
+            top, new MyRandom(seed + 1 + replicate, m.commonRandom),
+            rep, null, null
+        );
     }
 
-    /** Move the person to their next place
-     *  @author Andy Chen
-     *  @param time -- the time the person goes at
-     *  @param p -- the place the person goes to
+    /** The key of a simulation
+     *  @param m -- the model
+     *  @param top -- the topology shared by all replicates, or null
+     *  @param seed -- the seed
+     *  @param replicate -- the replicate
+     *  @return a SHA-256 hash, in hexadecimal
+     *  An imported topology is known by the files it came from.
      */
-    public void move(double time, Place p) {
-        if (diseaseState != DiseaseStates.dead
-            && diseaseState != DiseaseStates.bedridden) {
-            boolean isContageous = false;
-            if ((diseaseState == Person.DiseaseStates.asymptomatic) ||
-                (diseaseState == Person.DiseaseStates.symptomatic) ||
-                (diseaseState == Person.DiseaseStates.bedridden)) {
-                isContageous = true;
-            }
-            if (isContageous) location.contageous(time, -1);
-            location.depart(this);
-            if (isContageous) p.contageous(time, 1);
-            p.arrive(this);
+    private static String key(
+        Model m, Topology top, int seed, int replicate
+    ) {
+        final String text = m + "seed " + seed + ";\nreplicate " + replicate
+            + ";\n" + ((top == null) ? "" : (top.source == null)
+                ? "topology shared;\n" : "topology " + top.source + ";\n")
+            + (m.commonRandom ? "substreams;\n" : "")
+            + (m.locality ? "locality;\n" : "")
+            + "engine " + engineVersion + ";\n";
+        try {
+            final byte[] hash = MessageDigest.getInstance("SHA-256")
+                .digest(text.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder sb = new StringBuilder();
+            for (byte b: hash) sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM has SHA-256
         }
     }
 
-    // simulation of behavior
+    /** Replay the reports of a cache entry
+     *  @param entry -- the file
+     *  @param rep -- where the reports go
+     *  @return false if there is no usable entry
+     */
+    private static boolean replay(Path entry, Simulation.Reporter rep) {
+        final ArrayList < Double > times = new ArrayList < > ();
+        final ArrayList < int[] > reports = new ArrayList < > ();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+            Files.newInputStream(entry), 1 << 16
+        ))) {
+            if (in.readInt() != magic) return false;
+            final int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                times.add(in.readDouble());
+                final int[] pop = new int[in.readInt()];
+                for (int j = 0; j < pop.length; j++) pop[j] = in.readInt();
+                reports.add(pop);
+            }
+        } catch (IOException e) { // missing, evicted or damaged
+            return false;
+        }
+        try { // it was used, so it is kept longer
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(
+                System.currentTimeMillis()
+            ));
+        } catch (IOException e) {
+            // evicted since we read it, no matter
+        }
+        for (int i = 0; i < times.size(); i++) {
+            rep.report(times.get(i), reports.get(i));
+        }
+        return true;
+    }
 
-    /** Schedule the time at which a person will be infected
-     *  @param time -- the current time
-     *  @param meanDelay -- the delay until infection
+    /** Store the reports of a simulation
+     *  @param entry -- the file
+     *  @param times -- the time of each report
+     *  @param reports -- the statistics of each report
      */
-    public void scheduleInfect( double time, double meanDelay ) {
-        if (diseaseState == DiseaseStates.uninfected) { // irrelevant if not
-            double delay = rand.nextExponential( meanDelay );
-            infectMeTime = time + delay;
-            Simulator.schedule( infectMeTime, (double t)-> infect( t ) );
+    private static void store(
+        Path entry, ArrayList < Double > times, ArrayList < int[] > reports
+    ) {
+        try {
+            final Path temp = Files.createTempFile(dir, "entry", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16)
+            )) {
+                out.writeInt(magic);
+                out.writeInt(times.size());
+                for (int i = 0; i < times.size(); i++) {
+                    out.writeDouble(times.get(i));
+                    out.writeInt(reports.get(i).length);
+                    for (int v: reports.get(i)) out.writeInt(v);
+                }
+            }
+            Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING
+            );
+            evict();
+        } catch (IOException e) {
+            Error.warn("could not write cache entry: " + e.getMessage());
         }
     }
 
-    /** Infect this person
-     *  @param now -- the time of infection
-     *  This may be called on a person in any infection state and makes the
-     *  person latent.
-     *  This is a schedulable event service routine
+    /** Delete least recently used entries until the cache fits its limit
+     *  Other threads wait here; other processes wait on the lock file.
      */
-    public void infect(double now) {
-        if ((diseaseState == DiseaseStates.uninfected) // no reinfection
-            &&
-            (infectMeTime == now) // if not rescheduled
+    private static synchronized void evict() throws IOException {
+        try (FileChannel lock = FileChannel.open(dir.resolve("lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)
         ) {
-            final double duration = latent.duration();
+            lock.lock(); // released when the channel is closed
+            final ArrayList < Path > entries = new ArrayList < > ();
+            final HashMap < Path, Long > used = new HashMap < > ();
+            long total = 0;
+            try (DirectoryStream < Path > files
+                = Files.newDirectoryStream(dir, "*" + suffix)
+            ) {
+                for (Path p: files) {
+                    try {
+                        used.put(p, Files.getLastModifiedTime(p).toMillis());
+                        total = total + Files.size(p);
+                        entries.add(p);
+                    } catch (NoSuchFileException e) {
+                        // deleted by someone else meanwhile
+                    }
+                }
+            }
+            if (total <= limit) return;
+
+            entries.sort((Path a, Path b) -> Long.compare(
+                used.get(a), used.get(b)
+            ));
+            for (Path p: entries) {
+                if (total <= limit) break;
+                try {
+                    final long size = Files.size(p);
+                    Files.delete(p);
+                    total = total - size;
+                } catch (NoSuchFileException e) {
+                    // deleted by someone else meanwhile
+                }
+            }
+        }
+    }
+}
 
-            // update statistics
-            popByState[diseaseState.ordinal()]--;
-            diseaseState = DiseaseStates.latent;
-            popByState[diseaseState.ordinal()]++;
+/** Batches of models run in one JVM
+ *  Each model gets its own Model and Simulation, so models are independent
+ *  and may run concurrently; the report of each goes to its own CSV file.
+ *  A model with errors is reported, with its warnings, and skipped.
+ */
+class Batch {
+    private Batch() {} // nobody should ever construct a batch object
 
-            if (latent.recover()) {
-                Simulator.schedule(now + duration, (double t) -> recover(t));
-            } else {
-                Simulator.schedule(
-                    now + duration, (double t) -> beContageous(t)
-                );
+    /** Collect the model files named by the command line
+     *  @param names -- file names or directory names
+     *  @return the model files; for directories, every file in it, except
+     *  CSV files, in name order
+     */
+    private static ArrayList < File > modelFiles(List < String > names) {
+        final ArrayList < File > files = new ArrayList < > ();
+        for (String n: names) {
+            final File f = new File(n);
+            final File[] inside = f.listFiles();
+            if (inside == null) { // not a directory
+                files.add(f);
+                continue;
+            }
+            Arrays.sort(inside);
+            for (File g: inside) {
+                if (g.isFile() && !g.getName().endsWith(".csv")) files.add(g);
             }
         }
+        return files;
     }
 
-    /** This person becomes contageous and asymptomatic
-     *  @param time -- the time of this state change
-     *  This may be called on a person in with a latent infection and makes the
-     *  person asymptomatic.
-     *  This is a schedulable event service routine
+    /** The output file for a model
+     *  @param dir -- the output directory
+     *  @param f -- the model file
+     *  @return dir/name.csv, where name is f's name without extension
      */
-    public void beContageous(double time) {
-        assert diseaseState == DiseaseStates.latent: "not latent";
-        final double duration = asymptomatic.duration();
-
-        // update statistics
-        popByState[diseaseState.ordinal()]--;
-        diseaseState = DiseaseStates.asymptomatic;
-        popByState[diseaseState.ordinal()]++;
-
-        // tell place that I'm sick
-        if (location != null) location.contageous(time, +1);
+    private static File outputFile(String dir, File f) {
+        String name = f.getName();
+        final int dot = name.lastIndexOf('.');
+        if (dot > 0) name = name.substring(0, dot);
+        return new File(dir, name + ".csv");
+    }
 
-        if (asymptomatic.recover()) {
-            Simulator.schedule(time + duration, (double t) -> recover(t));
-        } else {
-            Simulator.schedule(time + duration, (double t) -> feelSick(t));
+    /** Read and simulate one model
+     *  @param f -- the model file
+     *  @param out -- where to put the report
+     *  @param seed -- the seed of the random stream
+     *  @param common -- use common random numbers?
+     *  @param locality -- renumber the topology for locality?
+     *  @return null on success, or the warnings and error on failure
+     */
+    private static String simulate(
+        File f, File out, int seed, boolean common, boolean locality
+    ) {
+        Error.collect(true);
+        try (PrintStream o = new PrintStream(new BufferedOutputStream(
+            new FileOutputStream(out), 1 << 16
+        ))) {
+            final Model m = epidemic.buildModel(new MyScanner(f));
+            m.commonRandom = common;
+            m.locality = locality;
+            Cache.simulate(m, seed, 0,
+                (double t, int[] pop) -> o.println(Person.csv(t, pop))
+            );
+            return null;
+        } catch (FileNotFoundException e) {
+            return "Epidemic: could not open file: " + e.getMessage();
+        } catch (Error.Failure e) {
+            out.delete(); // don't leave a misleading partial report
+            return e.getMessage();
+        } finally {
+            Error.collect(false);
         }
     }
 
-    /** This person is contageous and starts feeling sick
-     *  @param time -- the time of this state change
-     *  This may be called on a person in with an asymptomatic infection and
-     *  makes the person symptomatic.
-     *  This is a schedulable event service routine
+    /** Run a batch of models
+     *  @param names -- model files or directories of them
+     *  @param dir -- the directory for the reports
+     *  @param seed -- the seed of each model's random stream
+     *  @param threads -- how many models to run at once
+     *  @param common -- use common random numbers?
+     *  @param locality -- renumber topologies for locality?
+     *  A summary of the batch goes to System.err.
      */
-    public void feelSick(double time) {
-        assert diseaseState == DiseaseStates.asymptomatic: "not asymptomatic";
-        final double duration = symptomatic.duration();
-
-        // update statistics
-        popByState[diseaseState.ordinal()]--;
-        diseaseState = DiseaseStates.symptomatic;
-        popByState[diseaseState.ordinal()]++;
+    public static void run(
+        List < String > names, String dir, int seed, int threads,
+        boolean common, boolean locality
+    ) {
+        final long start = System.nanoTime();
+        final ArrayList < File > files = modelFiles(names);
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final ArrayList < Future < String >> runs = new ArrayList < > ();
+        for (File f: files) {
+            runs.add(pool.submit(
+                () -> simulate(
+                    f, outputFile(dir, f), seed, common, locality
+                )
+            ));
+        }
+        pool.shutdown();
 
-        if (symptomatic.recover()) {
-            Simulator.schedule(time + duration, (double t) -> recover(t));
-        } else {
-            Simulator.schedule(time + duration, (double t) -> goToBed(t));
+        int failed = 0;
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                final String problem = runs.get(i).get();
+                if (problem != null) {
+                    Error.warn(files.get(i) + ":\n" + problem);
+                    failed = failed + 1;
+                }
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            Error.fatal("batch failed: " + e);
         }
+        Error.setOutput(null); // the warnings go before the summary
+        System.err.println("batch: " + files.size() + " models, "
+            + failed + " failed, "
+            + (System.nanoTime() - start) / 1e9 + " seconds"
+        );
     }
+}
 
-    /** This person is contageous and feels so bad they go to bed
-     *  @author Andy Chen
-     *  @param time -- the time of this state change
-     *  This may be called on a person in with an symptomatic infection and
-     *  makes the person bedridden.
-     *  This is a schedulable event service routine
-     */
-    public void goToBed(double time) {
-        assert diseaseState == DiseaseStates.symptomatic: "not symptomatic";
-        final double duration = bedridden.duration();
+/** Local simulation service, so one warm JVM can run many jobs
+ *  Listens for HTTP on the loopback interface only.
+ *  <pre>
+ *    POST /run?seed=n&interval=h&breakdown  body is a model, as in a file;
+ *                         the response streams the report CSV as it is made
+ *    POST /cancel?job=n   cancel a job
+ *    GET  /jobs           list the jobs, queued or running
+ *  </pre>
+ *  Each request is handled on its own thread, virtual if the JVM has them.
+ *  Every job builds its own Model and Simulation, so jobs share no state;
+ *  warnings and errors in a job go back to its client, see Error.collect.
+ *  At most threads jobs run at once, up to queue more wait, and beyond that
+ *  new jobs are refused with status 503.
+ */
+class Server {
+
+    // one submitted job
+    private static class Job {
+        public final int id;
+        public final Thread thread; // the thread handling it
+        public boolean waiting = false; // in the queue? guarded by the job
+        public volatile boolean running = false; // has it left the queue?
+        public volatile boolean cancelled = false;
+        public Job(int i, Thread t) {
+            id = i;
+            thread = t;
+        }
+    }
 
-        // update statistics
-        popByState[diseaseState.ordinal()]--;
-        diseaseState = DiseaseStates.bedridden;
-        popByState[diseaseState.ordinal()]++;
+    // thrown through the simulation to abandon a job
+    private static class Cancelled extends RuntimeException {
+        private static final long serialVersionUID = 1L;
 
-        if (symptomatic.recover()) {
-            Simulator.schedule(time + duration, (double t) -> recover(t));
-        } else {
-            Simulator.schedule(time + duration, (double t) -> die(t));
+        public Cancelled() {
+            super("cancelled");
         }
     }
 
-    /** This person gets better
-     *  @param time -- the time of this state change
-     *  This may be called on a person in any infected disease state
-     *  and leaves the person well and immune from further infection.
-     *  This is a schedulable event service routine
-     */
-    public void recover(double time) {
-        // update statistics
-        popByState[diseaseState.ordinal()]--;
-        diseaseState = DiseaseStates.recovered;
-        popByState[diseaseState.ordinal()]++;
+    private final Semaphore running; // permits for running jobs
+    private final Semaphore slots; // permits for jobs, running or queued
+    private final AtomicInteger nextId = new AtomicInteger(0);
+    private final ConcurrentHashMap < Integer, Job > jobs
+        = new ConcurrentHashMap < > ();
 
-        if (location != null) location.contageous(time, -1);
+    /** construct a server
+     *  @param threads -- how many jobs may run at once
+     *  @param queue -- how many more jobs may wait
+     */
+    private Server(int threads, int queue) {
+        running = new Semaphore(threads);
+        slots = new Semaphore(threads + queue);
     }
 
-    /** This person dies
-     *  @param time -- the time of this state change
-     *  This may be called on a bedridden person and
-     *  makes the person die.
-     *  This is a schedulable event service routine
+    /** Make an executor that gives each task a thread of its own
+     *  @return virtual threads if this JVM has them, otherwise a pool
      */
-    public void die(double time) {
-        assert diseaseState == DiseaseStates.bedridden: "not bedridden";
-        // update statistics
-        popByState[diseaseState.ordinal()]--;
-        diseaseState = DiseaseStates.dead;
-        popByState[diseaseState.ordinal()]++;
+    private static ExecutorService threadPerTask() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
 
-        if (location != null) {
-            location.contageous(time, -1);
-            location.depart(this);
+    /** Draw a seed for a job that did not give one
+     *  @return the seed
+     *  Requests are handled concurrently, and streams are not thread-safe.
+     */
+    private static long newSeed() {
+        synchronized (MyRandom.stream) {
+            return MyRandom.stream.nextLong();
         }
+    }
 
-        // no new event is scheduled.
+    /** Get the query parameters of a request
+     *  @param ex -- the request
+     *  @return map from names to values; names without values map to ""
+     */
+    private static HashMap < String, String > query(HttpExchange ex) {
+        final HashMap < String, String > q = new HashMap < > ();
+        final String raw = ex.getRequestURI().getRawQuery();
+        if (raw == null) return q;
+        for (String pair: raw.split("&")) {
+            final int eq = pair.indexOf('=');
+            if (eq < 0) {
+                q.put(pair, "");
+            } else {
+                q.put(pair.substring(0, eq), pair.substring(eq + 1));
+            }
+        }
+        return q;
     }
 
-    // reporting tools
+    /** Send a short, complete response
+     *  @param ex -- the request
+     *  @param status -- the HTTP status
+     *  @param body -- the text of the response
+     */
+    private static void reply(HttpExchange ex, int status, String body)
+    throws IOException {
+        final byte[] b = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "text/plain");
+        ex.sendResponseHeaders(status, b.length);
+        try (OutputStream o = ex.getResponseBody()) {
+            o.write(b);
+        }
+    }
 
-    /** Report population statistics at the given time
-     *  @param time
-     *  Intended to be scheduled as an event at time zero, initiates a
-     *  sequence of daily reporting events.
-     *  Each report is a CSV line giving the time and the population
-     *  for each disease state.
+    /** Handle POST /run
+     *  @param ex -- the request
      */
-    public static void report(double time) {
-        System.out.print(Double.toString(time / Time.day));
-        for (int i = 0; i <= DiseaseStates.dead.ordinal(); i++) {
-            System.out.print(",");
-            System.out.print(Integer.toString(popByState[i]));
+    private void run(HttpExchange ex) throws IOException {
+        if (!"POST".equals(ex.getRequestMethod())) {
+            reply(ex, 405, "POST a model\n");
+            return;
+        }
+        if (!slots.tryAcquire()) { // taken at once, so never over the limit
+            reply(ex, 503, "too many jobs\n");
+            return;
+        }
+        final Job job = new Job(
+            nextId.getAndIncrement(), Thread.currentThread()
+        );
+        jobs.put(job.id, job);
+        Error.collect(true);
+        try {
+            final String text = new String(
+                ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8
+            );
+            final HashMap < String, String > q = query(ex);
+            final long seed = q.containsKey("seed")
+                ? Long.parseLong(q.get("seed")) : newSeed();
+            final int interval = q.containsKey("interval")
+                ? Integer.parseInt(q.get("interval")) : 24;
+            final boolean breakdown = q.containsKey("breakdown");
+            if (interval <= 0) Error.fatal("interval not positive");
+            final Model m = epidemic.buildModel(new MyScanner(text));
+
+            synchronized (job) {
+                if (job.cancelled) throw new Cancelled();
+                job.waiting = true;
+            }
+            try {
+                running.acquire(); // wait in the queue, until cancelled
+            } finally {
+                synchronized (job) { // no interrupt can come after this
+                    job.waiting = false;
+                    Thread.interrupted();
+                }
+            }
+            try {
+                job.running = true;
+                if (job.cancelled) throw new Cancelled();
+                stream(ex, job, m, seed, interval, breakdown);
+            } finally {
+                running.release();
+            }
+        } catch (Error.Failure | NumberFormatException e) {
+            reply(ex, 400, e.getMessage() + "\n");
+        } catch (Cancelled e) {
+            if (ex.getResponseCode() < 0) reply(ex, 409, "cancelled\n");
+        } catch (InterruptedException e) { // cancelled while queued
+            reply(ex, 409, "cancelled\n");
+        } finally {
+            Error.collect(false);
+            jobs.remove(job.id);
+            slots.release();
+            ex.close();
         }
-        System.out.println();
+    }
 
-        // schedule the next report
-        Simulator.schedule(time + 24 * Time.hour,
-            (double t) -> Person.report(t)
+    /** Simulate a job, streaming its reports back as they are made
+     *  @param ex -- the request
+     *  @param job -- the job
+     *  @param m -- the model
+     *  @param seed -- the seed of the random stream
+     *  @param interval -- hours between reports
+     *  @param breakdown -- report the full breakdown?
+     */
+    private static void stream(
+        HttpExchange ex, Job job, Model m, long seed, int interval,
+        boolean breakdown
+    ) throws IOException {
+        final PrintStream out = new PrintStream(
+            new BufferedOutputStream(ex.getResponseBody()), false, "UTF-8"
+        );
+        final StringBuilder sb = new StringBuilder();
+        final Simulation sim = new Simulation(m, new MyRandom(seed),
+            (double t, int[] pop) -> {
+                if (job.cancelled || out.checkError()) throw new Cancelled();
+                sb.setLength(0);
+                if (breakdown) {
+                    sb.append(t / Time.day);
+                    for (int v: pop) sb.append(',').append(v);
+                } else {
+                    Person.appendCSV(sb, t, pop);
+                }
+                out.println(sb);
+                out.flush(); // send each report as it is made
+            }
         );
+
+        // the model is good, start the response unless cancelled meanwhile
+        if (job.cancelled) throw new Cancelled();
+        ex.getResponseHeaders().set("Content-Type", "text/csv");
+        ex.getResponseHeaders().set("Job", Integer.toString(job.id));
+        ex.sendResponseHeaders(200, 0); // chunked, length unknown
+        if (breakdown) out.println(Simulation.breakdownHeader(m));
+        sim.reportInterval = interval * Time.hour;
+        sim.run();
+        out.close();
     }
 
-    /** Places everyone at their homes
-     *  Only called during start of simulation
-     *  @author Andy Chen, Blake Thorson
+    /** Handle POST /cancel
+     *  @param ex -- the request
      */
-    public static void startAtHome() {
-        for (Person p: allPeople) {
-            p.location = p.home;
-            if (p.diseaseState == DiseaseStates.latent) {
-                p.location.contageous(0,1);
+    private void cancel(HttpExchange ex) throws IOException {
+        try {
+            final Job job = jobs.get(Integer.parseInt(query(ex).get("job")));
+            if (job == null) {
+                reply(ex, 404, "no such job\n");
+            } else {
+                synchronized (job) { // a queued job leaves the queue now
+                    job.cancelled = true;
+                    if (job.waiting) job.thread.interrupt();
+                }
+                reply(ex, 200, "cancelled " + job.id + "\n");
             }
+        } catch (NumberFormatException e) {
+            reply(ex, 400, "job number expected\n");
         }
     }
 
-    /** Print out the entire population
-     *  This is needed only in the early stages of debugging
-     *  and obviously useless for large populations.
+    /** Handle GET /jobs
+     *  @param ex -- the request
      */
-    public static void printAll() {
-        for (Person p: allPeople) {
-            // line 1: person id and role
-            System.out.print(p.toString());
-            System.out.print(" ");
-            System.out.println(p.role.name);
+    private void list(HttpExchange ex) throws IOException {
+        final StringBuilder sb = new StringBuilder("job,state\n");
+        for (Job job: jobs.values()) {
+            sb.append(job.id).append(',').append(
+                job.cancelled ? "cancelled" : job.running ? "running" : "queued"
+            ).append('\n');
+        }
+        reply(ex, 200, sb.toString());
+    }
 
-            // line 2 the home
-            System.out.print(" "); // indent following lines
-            System.out.print(p.home.kind.name);
-            System.out.print(" ");
-            System.out.print(p.home.toString());
-            System.out.println();
-            // lines 3 and up: each place and its schedule
-            for (PlaceSchedule ps: p.places) {
-                System.out.print(" "); // indent following lines
-                System.out.print(ps.place.kind.name);
-                System.out.print(" ");
-                System.out.print(ps.place.toString());
-                assert ps.schedule != null: "guaranteed by PlaceKind";
-                System.out.print(ps.schedule.toString());
-                System.out.println();
-            }
+    /** Run the simulation service
+     *  @param port -- the port to listen on
+     *  @param threads -- how many jobs may run at once
+     *  @param queue -- how many more jobs may wait
+     *  This does not return.
+     */
+    public static void serve(int port, int threads, int queue) {
+        final Server server = new Server(threads, queue);
+        try {
+            final HttpServer http = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                0
+            );
+            http.createContext("/run", server::run);
+            http.createContext("/cancel", server::cancel);
+            http.createContext("/jobs", server::list);
+            http.setExecutor(threadPerTask());
+            http.start();
+        } catch (IOException e) {
+            Error.fatal("could not listen on port " + port + ": " + e);
         }
     }
 }
 
 /** The main class
  *  This class should never be instantiated.
- *  All methods here are static and all but the main method are private.
+ *  All methods here are static.
  *  @see Role for the framework that creates people
  *  @see PlaceKind for the framework from which places are constructed
  *  @see Person for the ultimate result of this creation
@@ -1310,20 +6873,13 @@ public class epidemic {
 
     /** Read the details of the model from an input stream
      *  @param in -- the stream
+     *  @return the model
      *  Identifies the keywords population, role, etc and farms out the
      *  work for most of these to the classes that construct model parts.
      *  The exception (for now) is the total population.
      */
-    private static void buildModel(MyScanner in ) {
-        int pop = 0; // the population of the model, 0 = uninitialized
-        int infected = 0; // number initially infected, 0 = uninitialized
-        double endOfTime = 0.0; // 0.0 = uninitialized
-
-        // rules describing the progress of the infection
-        InfectionRule latent = null;
-        InfectionRule asymptomatic = null;
-        InfectionRule symptomatic = null;
-        InfectionRule bedridden = null;
+    static Model buildModel(MyScanner in ) {
+        final Model m = new Model();
 
         while ( in .hasNext()) { // scan the input file
 
@@ -1331,38 +6887,38 @@ public class epidemic {
             String keyword = in .getNextName("???", () -> "keyword expected");
             if ("population".equals(keyword)) {
                 int p = Check.posIntSemicolon( in , () -> "population");
-                if (pop != 0) {
+                if (m.population != 0) {
                     Error.warn("population specified more than once");
                 } else {
-                    pop = p;
+                    m.population = p;
                 }
             } else if ("infected".equals(keyword)) {
                 int i = Check.posIntSemicolon( in , () -> "infected");
-                if (infected != 0) {
+                if (m.infected != 0) {
                     Error.warn("infected specified more than once");
                 } else {
-                    infected = i;
+                    m.infected = i;
                 }
             } else if ("latent".equals(keyword)) {
-                if (latent != null) {
+                if (m.latent != null) {
                     Error.warn("latency time specified more than once");
                 }
-                latent = new InfectionRule( in , () -> "latent");
+                m.latent = new InfectionRule( in , () -> "latent");
             } else if ("asymptomatic".equals(keyword)) {
-                if (asymptomatic != null) {
+                if (m.asymptomatic != null) {
                     Error.warn("asymptomatic time specified more than once");
                 }
-                asymptomatic = new InfectionRule( in , () -> "asymptomatic");
+                m.asymptomatic = new InfectionRule( in , () -> "asymptomatic");
             } else if ("symptomatic".equals(keyword)) {
-                if (symptomatic != null) {
+                if (m.symptomatic != null) {
                     Error.warn("symptomatic time specified more than once");
                 }
-                symptomatic = new InfectionRule( in , () -> "symptomatic");
+                m.symptomatic = new InfectionRule( in , () -> "symptomatic");
             } else if ("bedridden".equals(keyword)) {
-                if (bedridden != null) {
+                if (m.bedridden != null) {
                     Error.warn("bedridden time specified more than once");
                 }
-                bedridden = new InfectionRule( in , () -> "bedridden");
+                m.bedridden = new InfectionRule( in , () -> "bedridden");
             } else if ("end".equals(keyword)) {
                 final double et = in .getNextFloat(1.0F,
                     () -> "time: end time missing"
@@ -1372,15 +6928,19 @@ public class epidemic {
                 Check.positive(et, 0.0F,
                     () -> "end " + et + ": negative end time?"
                 );
-                if (endOfTime > 0.0) {
+                if (m.endOfTime > 0.0) {
                     Error.warn("end " + et + ": duplicate end time");
                 } else {
-                    endOfTime = et;
+                    m.endOfTime = et;
                 }
             } else if ("role".equals(keyword)) {
-                new Role( in );
+                new Role( in , m);
             } else if ("place".equals(keyword)) {
-                new PlaceKind( in );
+                new PlaceKind( in , m);
+            } else if ("close".equals(keyword)) {
+                new Intervention( in , m, false);
+            } else if ("open".equals(keyword)) {
+                new Intervention( in , m, true);
             } else if (keyword == "???") { // there was no keyword
                 // == is allowed here 'cause we're detecting the default value
                 // we need to advance the scanner here or we'd stick in a loop
@@ -1390,50 +6950,362 @@ public class epidemic {
             }
         }
 
-        // check that all required fields are filled in
-
-        if (pop == 0) Error.warn("population not given");
-        if (latent == null) Error.warn("latency time not given");
-        if (asymptomatic == null) Error.warn("asymptomatic time not given");
-        if (symptomatic == null) Error.warn("symptomatic time not given");
-        if (bedridden == null) Error.warn("bedridden time not given");
-        if (endOfTime == 0.0) Error.warn("end of time not given");
-
+        m.checkComplete();
         Error.exitIfWarnings("Aborted due to errors in input");
 
-        Person.setDiseaseParameters(
-            latent, asymptomatic, symptomatic, bedridden
-        );
-
-        Simulator.schedule( // schedule the end of time
-            endOfTime * Time.day, (double t) -> System.exit(0)
-        );
-
-        // Role is responsible for figuring out how many people per role
-        Role.populateRoles(pop, infected);
+        return m;
+    }
 
-        // Schedule the first of the daily reports to be printed
-        Simulator.schedule(0.0, (double t) -> Person.report(t));
+    /** Read a model from a file
+     *  @param name -- the file name
+     *  @return the model
+     */
+    static Model readModel(String name) {
+        try {
+            return buildModel(new MyScanner(new File(name)));
+        } catch (FileNotFoundException e) {
+            Error.fatal("could not open file: " + name);
+            return null; // never happens, fatal does not return
+        }
+    }
 
-        // Start everyone at their home and schedule their daily activities
-        Person.startAtHome();
-        Simulator.scheduleActivities(endOfTime);
+    /** Get a positive integer command line argument
+     *  @param args -- the command line arguments
+     *  @param i -- the index of the option the argument follows
+     *  @return the argument's value, or 1 if it is defective
+     */
+    private static int intArg(String[] args, int i) {
+        try {
+            int v = Integer.parseInt(args[i + 1]);
+            if (v > 0) return v;
+        } catch (NumberFormatException e) {
+            // fall through to the complaint below
+        }
+        Error.warn(args[i] + " " + args[i + 1] + ": positive integer expected");
+        return 1;
     }
 
     /** The main method
      *  @param args -- the command line arguments
      *  Most of this code is entirely about command line argument processing.
-     *  It calls buildModel and will eventuall also start the simulation.
+     *  Options come before the model file name:
+     *  <pre>
+     *    --sweep spec      run the parameter sweep given in file spec
+     *    --replicates n    run n replicates and output summary statistics
+     *    --seed n          replicate r uses seed n+r, default 1
+     *    --threads n       run n replicates at once, default one per cpu
+     *    --cache dir       reuse reports of replicates, sweeps and batches
+     *                      stored in dir, keeping at most --cache-size mb,
+     *                      default 1024
+     *    --adaptive p      run replicates until the 95% intervals of peak
+     *                      symptomatic, dead and recovered are within p
+     *                      percent of their means, up to --replicates n,
+     *                      default 1000
+     *    --translog f      log who infected whom to binary file f
+     *    --translog-csv f  convert binary log f to CSV, no model needed
+     *    --check-random n  check the random samplers on n values each
+     *    --plan            predict what simulating the model will take
+     *    --estimate        estimate R0 and the early growth rate, analytically
+     *    --generate n      print a synthetic model of n people, with
+     *                      --kinds k kinds of place and --roles r roles
+     *    --bench f         append benchmarks of synthetic models of 10**4
+     *                      people up to --bench-max n to results file f
+     *    --population f    keep everyone's state in memory-mapped file f
+     *    --people f        take the people from CSV table f, with their
+     *                      places from --memberships table g
+     *    --population-csv f  convert population file f to CSV, no model
+     *    --interval h      report every h hours instead of daily
+     *    --breakdown       report by role and kind of place too, with header
+     *    --histograms f    write histograms of the time in each disease
+     *                      state and of generation intervals to file f
+     *    --shared-topology replicates share one elaboration of the model,
+     *                      and differ only in how the disease spreads
+     *    --common-random   replicates, sweeps and batches give each person
+     *                      their own random substreams, so runs of two
+     *                      scenarios with the same seed are closely paired
+     *    --locality        renumber people and places so those that meet
+     *                      are near each other in memory, and in the same
+     *                      --distributed worker
+     *    --server port     serve simulations over HTTP, no model needed;
+     *                      --threads jobs run at once, --queue n more wait
+     *    --distributed n   simulate in n worker processes on this machine
+     *    --worker address  be a worker, for the coordinator at host:port
+     *    --batch dir       simulate every model named after the options,
+     *                      or in directories named, --threads at a time,
+     *                      with the report for name.txt in dir/name.csv
+     *  </pre>
+     *  Without options, this reads the model and simulates it once.
      */
     public static void main(String[] args) {
-        if (args.length < 1) Error.fatal("missing file name");
-        if (args.length > 1) Error.warn("too many arguments: " + args[1]);
-        try {
-            buildModel(new MyScanner(new File(args[0])));
-            // Person.printAll(); // BUG:  potentially useful for debugging
-            Simulator.run();
-        } catch (FileNotFoundException e) {
-            Error.fatal("could not open file: " + args[0]);
+        String sweep = null; // sweep specification file, null if none
+        int replicates = 0; // number of replicates to summarize, 0 if none
+        int adaptive = 0; // target interval width in percent, 0 if fixed
+        String cache = null; // cache directory, or null
+        int cacheSize = 1024; // megabytes the cache may use
+        int seed = 1; // seed of replicate 0
+        int threads = Runtime.getRuntime().availableProcessors();
+        String translog = null; // transmission log file, null if none
+        String population = null; // population file, null if none
+        String people = null; // people table to import, null if none
+        String histograms = null; // duration histogram file, null if none
+        String memberships = null; // membership table to import, or null
+        int interval = 0; // hours between reports, 0 if not given
+        boolean breakdown = false; // report the full breakdown?
+        boolean plan = false; // only predict what the simulation takes?
+        boolean estimate = false; // only estimate how fast it spreads?
+        boolean shared = false; // do replicates share one topology?
+        boolean common = false; // do runs use common random numbers?
+        boolean locality = false; // renumber topologies for locality?
+        int server = 0; // port to serve on, 0 if not serving
+        int queue = 64; // jobs allowed to wait when serving
+        String batch = null; // output directory for batch mode, or null
+        int workers = 0; // number of worker processes, 0 if not distributed
+        int generate = 0; // population of the model to generate, or 0
+        String bench = null; // benchmark results file, or null
+        int benchMax = 1000000; // largest population to benchmark
+        int kinds = 4; // kinds of place in generated models
+        int roles = 5; // roles in generated models
+        int arg = 0; // the argument being processed
+
+        Error.setOutput(new AsyncOutput(System.err, 0));
+        while ((arg < args.length) && args[arg].startsWith("--")) {
+            final boolean hasValue = arg + 1 < args.length;
+            if ("--sweep".equals(args[arg]) && hasValue) {
+                sweep = args[arg + 1];
+                arg = arg + 2;
+            } else if ("--replicates".equals(args[arg]) && hasValue) {
+                replicates = intArg(args, arg);
+                arg = arg + 2;
+            } else if ("--cache".equals(args[arg]) && hasValue) {
+                cache = args[arg + 1];
+                arg = arg + 2;
+            } else if ("--cache-size".equals(args[arg]) && hasValue) {
+                cacheSize = intArg(args, arg);
+                arg = arg + 2;
+            } else if ("--adaptive".equals(args[arg]) && hasValue) {
+                adaptive = intArg(args, arg);
+                arg = arg + 2;
+            } else if ("--seed".equals(args[arg]) && hasValue) {
+                seed = intArg(args, arg);
+                arg = arg + 2;
+            } else if ("--threads".equals(args[arg]) && hasValue) {
+                threads = intArg(args, arg);
+                arg = arg + 2;
+            } else if ("--translog".equals(args[arg]) && hasValue) {
+                translog = args[arg + 1];
+                arg = arg + 2;
+            } else if ("--population".equals(args[arg]) && hasValue) {
+                population = args[arg + 1];
+                arg = arg + 2;
+            } else if ("--histograms".equals(args[arg]) && hasValue) {
+                histograms = args[arg + 1];
+                arg = arg + 2;
+            } else if ("--people".equals(args[arg]) && hasValue) {
+                people = args[arg + 1];
+                arg = arg + 2;
+            } else if ("--memberships".equals(args[arg]) && hasValue) {
+                memberships = args[arg + 1];
+                arg = arg + 2;
+            } else if ("--interval".equals(args[arg]) && hasValue) {
+                interval = intArg(args, arg);
+                arg = arg + 2;
+            } else if ("--server".equals(args[arg]) && hasValue) {
+                server = intArg(args, arg);
+                arg = arg + 2;
+            } else if ("--generate".equals(args[arg]) && hasValue) {
+                generate = intArg(args, arg);
+                arg = arg + 2;
+            } else if ("--bench".equals(args[arg]) && hasValue) {
+                bench = args[arg + 1];
+                arg = arg + 2;
+            } else if ("--bench-max".equals(args[arg]) && hasValue) {
+                benchMax = intArg(args, arg);
+                arg = arg + 2;
+            } else if ("--kinds".equals(args[arg]) && hasValue) {
+                kinds = intArg(args, arg);
+                arg = arg + 2;
+            } else if ("--roles".equals(args[arg]) && hasValue) {
+                roles = intArg(args, arg);
+                arg = arg + 2;
+            } else if ("--distributed".equals(args[arg]) && hasValue) {
+                workers = intArg(args, arg);
+                arg = arg + 2;
+            } else if ("--worker".equals(args[arg]) && hasValue) {
+                Distributed.work(args[arg + 1], locality);
+                Error.setOutput(null); // wait for any warnings to be output
+                return;
+            } else if ("--batch".equals(args[arg]) && hasValue) {
+                batch = args[arg + 1];
+                arg = arg + 2;
+            } else if ("--queue".equals(args[arg]) && hasValue) {
+                queue = intArg(args, arg);
+                arg = arg + 2;
+            } else if ("--plan".equals(args[arg])) {
+                plan = true;
+                arg = arg + 1;
+            } else if ("--estimate".equals(args[arg])) {
+                estimate = true;
+                arg = arg + 1;
+            } else if ("--shared-topology".equals(args[arg])) {
+                shared = true;
+                arg = arg + 1;
+            } else if ("--common-random".equals(args[arg])) {
+                common = true;
+                arg = arg + 1;
+            } else if ("--locality".equals(args[arg])) {
+                locality = true;
+                arg = arg + 1;
+            } else if ("--breakdown".equals(args[arg])) {
+                breakdown = true;
+                arg = arg + 1;
+            } else if ("--translog-csv".equals(args[arg]) && hasValue) {
+                TransmissionLog.toCSV(args[arg + 1], System.out);
+                return;
+            } else if ("--check-random".equals(args[arg]) && hasValue) {
+                MyRandom.check(intArg(args, arg), System.out);
+                return;
+            } else if ("--population-csv".equals(args[arg]) && hasValue) {
+                PopulationFile.toCSV(args[arg + 1], System.out);
+                return;
+            } else {
+                Error.warn("unknown option: " + args[arg]);
+                arg = arg + 1;
+            }
+        }
+        if (cache != null) Cache.open(cache, cacheSize);
+        if ((generate > 0) || (bench != null)) {
+            Error.exitIfWarnings("Aborted due to errors in arguments");
+            if (generate > 0) {
+                System.out.print(
+                    Benchmark.generate(generate, kinds, roles, 30, seed)
+                );
+            } else {
+                Benchmark.run(bench, benchMax, kinds, roles, seed);
+            }
+            Error.setOutput(null); // wait for any warnings to be output
+            return;
+        }
+        if (server > 0) {
+            Error.exitIfWarnings("Aborted due to errors in arguments");
+            Error.setOutput(null); // warnings are printed immediately
+            Server.serve(server, threads, queue);
+            return;
+        }
+        if (args.length <= arg) Error.fatal("missing file name");
+        if (batch != null) {
+            if ((translog != null) || (population != null)
+                || (histograms != null) || (interval > 0) || breakdown
+            ) {
+                Error.fatal("--batch only writes daily reports");
+            }
+            Error.exitIfWarnings("Aborted due to errors in arguments");
+            Batch.run(
+                Arrays.asList(args).subList(arg, args.length),
+                batch, seed, threads, common, locality
+            );
+            Error.setOutput(null); // wait for any warnings to be output
+            return;
+        }
+        if (args.length > arg + 1) {
+            Error.warn("too many arguments: " + args[arg + 1]);
+        }
+
+        Model m = readModel(args[arg]);
+        m.commonRandom = common;
+        m.locality = locality;
+        if ((people == null) != (memberships == null)) {
+            Error.fatal("--people and --memberships go together");
+        }
+        if ((people != null) && ((sweep != null) || (workers > 0))) {
+            Error.fatal("--people is not used by --sweep or --distributed");
+        }
+        if ((people != null) && locality) {
+            Error.fatal("--locality is not used by --people");
+        }
+        if ((histograms != null)
+            && (plan || estimate || (sweep != null) || (workers > 0))
+        ) {
+            Error.fatal("--histograms is only for single runs and replicates");
+        }
+        if (common && (sweep == null) && (replicates == 0) && (adaptive == 0)
+            && !plan && !estimate
+        ) {
+            Error.fatal("--common-random is not for single runs");
+        }
+        final boolean summarize = (sweep == null) && !plan && !estimate
+            && ((replicates > 0) || (adaptive > 0)); // only a summary output
+        final boolean single = (sweep == null) && !plan && !estimate
+            && !summarize && (workers == 0);
+        final boolean distributed = (sweep == null) && !plan && !estimate
+            && !summarize && (workers > 0);
+        if (((translog != null) || (population != null)) && !single) {
+            Error.fatal("--translog and --population are only for single runs");
+        }
+        if ((interval > 0) && !single) {
+            Error.fatal("--interval is only for single runs");
+        }
+        if (breakdown && !single && !distributed) {
+            Error.fatal("--breakdown is only for single and distributed runs");
+        }
+        if (shared && !summarize) {
+            Error.fatal("--shared-topology is only for replicates");
+        }
+        final Topology top = (people != null)
+            ? Census.read(m, people, memberships, new MyRandom(seed), threads)
+            : shared ? new Topology(m, new MyRandom(seed)) : null;
+        final Durations durations
+            = (histograms == null) ? null : new Durations();
+        if (plan) {
+            Plan.print(m, System.out);
+        } else if (estimate) {
+            Estimate.print(m, System.out);
+        } else if (sweep != null) {
+            Sweep.run(m, sweep);
+        } else if (adaptive > 0) {
+            Summary.runAdaptive(m, top, adaptive / 100.0,
+                (replicates > 0) ? replicates : 1000, seed, threads,
+                durations
+            );
+        } else if (replicates > 0) {
+            Summary.run(m, top, replicates, seed, threads, durations);
+        } else if (workers > 0) {
+            final AsyncOutput out = new AsyncOutput(
+                System.out, Simulation.breakdownSize(m)
+            );
+            if (breakdown) {
+                out.publish(AsyncOutput.text, 0.0, null,
+                    Simulation.breakdownHeader(m)
+                );
+            }
+            Distributed.coordinate(args[arg], m, workers, seed, out, breakdown);
+            out.close();
+        } else { // one run, with output done on other threads
+            final AsyncOutput out = new AsyncOutput(
+                System.out, Simulation.breakdownSize(m)
+            );
+            final TransmissionLog log
+                = (translog == null) ? null : new TransmissionLog(translog, m);
+            if (breakdown) {
+                out.publish(AsyncOutput.text, 0.0, null,
+                    Simulation.breakdownHeader(m)
+                );
+            }
+            final Simulation.Reporter rep = breakdown
+                ? Simulation.breakdownPrinter(out) : Simulation.printer(out);
+            final Topology t = (top == null)
+                ? new Topology(m, MyRandom.stream) : top;
+            Simulation sim = new Simulation(t, MyRandom.stream, rep, log,
+                null, new PopulationFile(population, t.people)
+            );
+            sim.reportInterval = ((interval > 0) ? interval : 24) * Time.hour;
+            sim.durations = durations;
+            // Person.printAll(sim, out); // BUG: potentially useful debugging
+            sim.run();
+            sim.population.force();
+            if (log != null) log.close();
+            out.close();
         }
+        if (durations != null) durations.write(histograms);
+        Error.setOutput(null); // wait for any warnings to be output
     }
 }